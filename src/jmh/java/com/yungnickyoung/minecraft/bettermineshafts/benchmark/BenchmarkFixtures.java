@@ -0,0 +1,94 @@
+package com.yungnickyoung.minecraft.bettermineshafts.benchmark;
+
+import com.electronwill.nightconfig.core.CommentedConfig;
+import com.yungnickyoung.minecraft.bettermineshafts.config.ConfigSnapshot;
+import com.yungnickyoung.minecraft.bettermineshafts.config.Configuration;
+import com.yungnickyoung.minecraft.bettermineshafts.world.BetterMineshaftStructure;
+import com.yungnickyoung.minecraft.bettermineshafts.world.generator.MineshaftPieceList;
+import com.yungnickyoung.minecraft.bettermineshafts.world.generator.MineshaftVariantSettings;
+import net.minecraft.util.SharedSeedRandom;
+import net.minecraft.util.registry.Bootstrap;
+import net.minecraft.util.registry.WorldGenRegistries;
+import net.minecraft.world.biome.Biome;
+import net.minecraft.world.biome.Biomes;
+
+import java.util.Random;
+
+/**
+ * Shared setup for the benchmarks.
+ *
+ * Every benchmark runs over the same fixed set of world seeds and chunk positions,
+ * so results from different runs (and different commits) are directly comparable.
+ */
+final class BenchmarkFixtures {
+    /** Number of (seed, chunk) cases each benchmark cycles through */
+    static final int CASE_COUNT = 64;
+
+    /** Seeds the generation of the cases themselves. Changing this invalidates all previous results! */
+    private static final long CASES_SEED = 0x5EEDL;
+
+    static final long[] SEEDS = new long[CASE_COUNT];
+    static final int[] CHUNK_XS = new int[CASE_COUNT];
+    static final int[] CHUNK_ZS = new int[CASE_COUNT];
+
+    static {
+        Random random = new Random(CASES_SEED);
+        for (int i = 0; i < CASE_COUNT; i++) {
+            SEEDS[i] = random.nextLong();
+            CHUNK_XS[i] = random.nextInt(2000) - 1000;
+            CHUNK_ZS[i] = random.nextInt(2000) - 1000;
+        }
+    }
+
+    private static boolean bootstrapped = false;
+
+    private BenchmarkFixtures() {}
+
+    /**
+     * Registers vanilla blocks, items, biomes etc. Must be called before touching any mod classes,
+     * since the variant settings and pieces reference blocks during class init.
+     */
+    static synchronized void bootstrap() {
+        if (!bootstrapped) {
+            Bootstrap.register();
+            bootstrapped = true;
+        }
+    }
+
+    /**
+     * Loads the default config into memory with all minecart spawn rates set to zero.
+     * Minecarts are entities, which need a real server world to be created.
+     * Minecart rolls still happen, so the rest of placement consumes the same random numbers.
+     */
+    static synchronized void disableMinecarts() {
+        Configuration.SPEC.setConfig(CommentedConfig.inMemory());
+        Configuration.spawnRates.smallShaftChestMinecartSpawnRate.set(0.0);
+        Configuration.spawnRates.smallShaftTntMinecartSpawnRate.set(0.0);
+        Configuration.spawnRates.mainShaftChestMinecartSpawnRate.set(0.0);
+        Configuration.spawnRates.mainShaftTntMinecartSpawnRate.set(0.0);
+        ConfigSnapshot.rebuild();
+    }
+
+    /**
+     * The biome used for every position during placement.
+     */
+    static Biome biome() {
+        return WorldGenRegistries.BIOME.getOrThrow(Biomes.PLAINS);
+    }
+
+    /**
+     * Returns a random seeded the same way a StructureStart seeds its own random for the given case.
+     */
+    static SharedSeedRandom startRandom(int caseIndex) {
+        SharedSeedRandom random = new SharedSeedRandom();
+        random.setLargeFeatureSeed(SEEDS[caseIndex], CHUNK_XS[caseIndex], CHUNK_ZS[caseIndex]);
+        return random;
+    }
+
+    /**
+     * Lays out the mineshaft for the given case, exactly as the structure start would.
+     */
+    static MineshaftPieceList layout(int caseIndex, MineshaftVariantSettings settings) {
+        return BetterMineshaftStructure.Start.layout(CHUNK_XS[caseIndex], CHUNK_ZS[caseIndex], settings, startRandom(caseIndex));
+    }
+}
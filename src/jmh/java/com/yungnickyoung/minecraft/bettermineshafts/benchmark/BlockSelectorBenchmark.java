@@ -0,0 +1,86 @@
+package com.yungnickyoung.minecraft.bettermineshafts.benchmark;
+
+import com.yungnickyoung.minecraft.bettermineshafts.world.generator.CompiledBlockSetSelector;
+import com.yungnickyoung.minecraft.bettermineshafts.world.generator.MineshaftVariantSettings;
+import com.yungnickyoung.minecraft.bettermineshafts.world.generator.MineshaftVariants;
+import com.yungnickyoung.minecraft.yungsapi.world.BlockSetSelector;
+import net.minecraft.block.BlockState;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares YUNG's API BlockSetSelector.get against {@link CompiledBlockSetSelector#get}.
+ *
+ * Each operation draws once from each of the variant's main, floor, brick and leg selectors,
+ * i.e. the mix of selectors pieces draw from while placing blocks.
+ *
+ * Setup also checks that both selectors pick the same blocks for the same random, and fails the trial if they don't.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BlockSelectorBenchmark {
+    /** Index into the default variant list. The index one past the end is the default variant. */
+    @Param({"0", "1", "2", "3", "4", "5", "6", "7", "8", "9"})
+    public int variant;
+
+    private static final int CHECK_DRAWS = 100_000;
+
+    private BlockSetSelector[] selectors;
+    private CompiledBlockSetSelector[] compiled;
+    private final Random random = new Random(0);
+
+    @Setup(Level.Trial)
+    public void setup() {
+        BenchmarkFixtures.bootstrap();
+        MineshaftVariants variants = MineshaftVariants.get();
+        MineshaftVariantSettings settings = variant < variants.getVariants().size()
+            ? variants.getVariants().get(variant)
+            : variants.getDefault();
+
+        selectors = new BlockSetSelector[]{settings.mainSelector, settings.floorSelector, settings.brickSelector, settings.legSelector};
+        compiled = new CompiledBlockSetSelector[]{
+            settings.getCompiledMainSelector(),
+            settings.getCompiledFloorSelector(),
+            settings.getCompiledBrickSelector(),
+            settings.getCompiledLegSelector()
+        };
+
+        checkSameResults();
+    }
+
+    @Benchmark
+    public void yungsApi(Blackhole blackhole) {
+        for (BlockSetSelector selector : selectors) {
+            blackhole.consume(selector.get(random));
+        }
+    }
+
+    @Benchmark
+    public void compiled(Blackhole blackhole) {
+        for (CompiledBlockSetSelector selector : compiled) {
+            blackhole.consume(selector.get(random));
+        }
+    }
+
+    private void checkSameResults() {
+        for (int i = 0; i < selectors.length; i++) {
+            Random a = new Random(i);
+            Random b = new Random(i);
+            for (int draw = 0; draw < CHECK_DRAWS; draw++) {
+                BlockState expected = selectors[i].get(a);
+                BlockState actual = compiled[i].get(b);
+                if (expected != actual) {
+                    throw new IllegalStateException("Compiled selector " + i + " of variant " + variant + " picked " + actual
+                        + " instead of " + expected + " on draw " + draw);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,441 @@
+package com.yungnickyoung.minecraft.bettermineshafts.benchmark;
+
+import it.unimi.dsi.fastutil.shorts.ShortList;
+import net.minecraft.block.Block;
+import net.minecraft.block.BlockState;
+import net.minecraft.block.Blocks;
+import net.minecraft.entity.Entity;
+import net.minecraft.entity.player.PlayerEntity;
+import net.minecraft.fluid.Fluid;
+import net.minecraft.fluid.FluidState;
+import net.minecraft.particles.IParticleData;
+import net.minecraft.tileentity.TileEntity;
+import net.minecraft.util.Direction;
+import net.minecraft.util.SoundCategory;
+import net.minecraft.util.SoundEvent;
+import net.minecraft.util.math.AxisAlignedBB;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.util.math.SectionPos;
+import net.minecraft.util.palette.UpgradeData;
+import net.minecraft.util.registry.DynamicRegistries;
+import net.minecraft.world.DifficultyInstance;
+import net.minecraft.world.DimensionType;
+import net.minecraft.world.EmptyTickList;
+import net.minecraft.world.IBlockReader;
+import net.minecraft.world.ISeedReader;
+import net.minecraft.world.ITickList;
+import net.minecraft.world.biome.Biome;
+import net.minecraft.world.biome.BiomeManager;
+import net.minecraft.world.border.WorldBorder;
+import net.minecraft.world.chunk.AbstractChunkProvider;
+import net.minecraft.world.chunk.ChunkPrimer;
+import net.minecraft.world.chunk.ChunkSection;
+import net.minecraft.world.chunk.ChunkStatus;
+import net.minecraft.world.chunk.IChunk;
+import net.minecraft.world.gen.Heightmap;
+import net.minecraft.world.gen.feature.structure.Structure;
+import net.minecraft.world.gen.feature.structure.StructureStart;
+import net.minecraft.world.level.ColorResolver;
+import net.minecraft.world.lighting.WorldLightManager;
+import net.minecraft.world.server.ServerWorld;
+import net.minecraft.world.storage.IWorldInfo;
+
+import javax.annotation.Nullable;
+import java.lang.reflect.Field;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * Minimal stand-in for the WorldGenRegion structures are placed into, without a server behind it.
+ *
+ * Like WorldGenRegion, it covers a 3x3 area of chunks around the chunk being decorated.
+ * The chunks are plain ChunkPrimers filled with flat stone terrain, since pieces reach through
+ * world.getChunk() into chunk sections (leg scans, post-processing, surface checks) and those paths should be measured too.
+ * Every biome is the same fixed biome.
+ *
+ * The chunks are allocated once and reused for every region, so moving to a new region allocates nothing
+ * and doesn't show up in allocation profiles. Blocks are addressed by their position within the chunk,
+ * so nothing pieces read depends on the position a primer was created with.
+ * Only the sections written to since the last reset are restored, along with the chunks' heightmaps.
+ *
+ * Anything that needs an actual server (entities, lighting, difficulty etc.) throws or does nothing,
+ * so benchmarks must disable minecarts, which are the only entities pieces spawn.
+ */
+final class InMemorySeedReader implements ISeedReader {
+    static final int SURFACE_Y = 63;
+    private static final ChunkStatus STATUS = ChunkStatus.LIQUID_CARVERS; // What neighbors of a chunk being decorated are at
+    private static final int RADIUS = 1;
+    private static final int SIZE = RADIUS * 2 + 1;
+
+    private final ChunkPrimer[] chunks = new ChunkPrimer[SIZE * SIZE];
+    private final WorldBorder worldBorder = new WorldBorder();
+    private final Random random = new Random();
+    private final Biome biome;
+    private final long seed;
+    private int minChunkX, minChunkZ;
+
+    /** Bit mask of the sections of each chunk written to since the last reset */
+    private final int[] dirtySections = new int[SIZE * SIZE];
+
+    /** Heightmaps of the chunks, and their contents over flat terrain, so they can be restored without recomputing them */
+    private final Heightmap[][] heightmaps = new Heightmap[SIZE * SIZE][];
+    private final long[][] heightmapTemplates;
+
+    /** The light source positions of each chunk, which ChunkPrimer has no way to clear */
+    private final List<?>[] lightSources = new List<?>[SIZE * SIZE];
+
+    /** Number of setBlockState calls since the last reset */
+    long setBlockStateCalls;
+
+    /** Counter incremented on each setBlockState call, so callers can attribute calls to whatever is placing blocks */
+    long[] currentCounter = new long[1];
+
+    InMemorySeedReader(long seed, Biome biome) {
+        this.seed = seed;
+        this.biome = biome;
+
+        Heightmap.Type[] heightmapTypes = STATUS.getHeightMaps().toArray(new Heightmap.Type[0]);
+        for (int i = 0; i < chunks.length; i++) {
+            ChunkPrimer chunk = new ChunkPrimer(new ChunkPos(i % SIZE, i / SIZE), UpgradeData.EMPTY);
+            chunk.setStatus(STATUS);
+            for (int sectionY = 0; sectionY <= SURFACE_Y >> 4; sectionY++) {
+                fillSection(chunk.getSection(sectionY), sectionY);
+            }
+            Heightmap.updateChunkHeightmaps(chunk, STATUS.getHeightMaps());
+
+            heightmaps[i] = new Heightmap[heightmapTypes.length];
+            for (int type = 0; type < heightmapTypes.length; type++) {
+                heightmaps[i][type] = chunk.getHeightmap(heightmapTypes[type]);
+            }
+            lightSources[i] = getLightSources(chunk);
+            chunks[i] = chunk;
+        }
+
+        // Every chunk has the same terrain, so they all share the same heightmaps
+        heightmapTemplates = new long[heightmapTypes.length][];
+        for (int type = 0; type < heightmapTypes.length; type++) {
+            heightmapTemplates[type] = heightmaps[0][type].getDataArray().clone();
+        }
+    }
+
+    /**
+     * Moves the region to be centered on the given chunk, restoring the flat terrain wherever blocks have been placed.
+     */
+    void reset(int centerChunkX, int centerChunkZ) {
+        this.minChunkX = centerChunkX - RADIUS;
+        this.minChunkZ = centerChunkZ - RADIUS;
+        this.setBlockStateCalls = 0;
+
+        for (int i = 0; i < chunks.length; i++) {
+            int dirty = dirtySections[i];
+            if (dirty == 0) {
+                continue;
+            }
+
+            ChunkPrimer chunk = chunks[i];
+            ChunkSection[] sections = chunk.getSections();
+            for (int sectionY = 0; sectionY < sections.length; sectionY++) {
+                if ((dirty & (1 << sectionY)) != 0 && sections[sectionY] != null) {
+                    fillSection(sections[sectionY], sectionY);
+                }
+            }
+            for (int type = 0; type < heightmaps[i].length; type++) {
+                heightmaps[i][type].setDataArray(heightmapTemplates[type]);
+            }
+
+            chunk.getTileEntities().clear();
+            for (ShortList positions : chunk.getPackedPositions()) {
+                if (positions != null) {
+                    positions.clear();
+                }
+            }
+            lightSources[i].clear();
+            dirtySections[i] = 0;
+        }
+    }
+
+    /**
+     * Fills the given section with the flat terrain: bedrock at y = 0, stone up to the surface, and air above it.
+     */
+    private static void fillSection(ChunkSection section, int sectionY) {
+        BlockState stone = Blocks.STONE.getDefaultState();
+        BlockState bedrock = Blocks.BEDROCK.getDefaultState();
+        BlockState air = Blocks.AIR.getDefaultState();
+        for (int localY = 0; localY < 16; localY++) {
+            int y = (sectionY << 4) + localY;
+            BlockState state = y == 0 ? bedrock : y <= SURFACE_Y ? stone : air;
+            for (int x = 0; x < 16; x++) {
+                for (int z = 0; z < 16; z++) {
+                    section.setBlockState(x, localY, z, state, false);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the list ChunkPrimer adds the position of every light-emitting block placed to.
+     * It is found by its type, since its name depends on the mappings.
+     */
+    private static List<?> getLightSources(ChunkPrimer chunk) {
+        for (Field field : ChunkPrimer.class.getDeclaredFields()) {
+            Type type = field.getGenericType();
+            if (type instanceof ParameterizedType
+                && ((ParameterizedType) type).getRawType() == List.class
+                && ((ParameterizedType) type).getActualTypeArguments()[0] == BlockPos.class) {
+                try {
+                    field.setAccessible(true);
+                    return (List<?>) field.get(chunk);
+                } catch (IllegalAccessException e) {
+                    throw new IllegalStateException("Unable to access ChunkPrimer light sources", e);
+                }
+            }
+        }
+        throw new IllegalStateException("Unable to find ChunkPrimer light sources");
+    }
+
+    private ChunkPrimer getPrimer(int chunkX, int chunkZ) {
+        return chunks[getIndex(chunkX, chunkZ)];
+    }
+
+    private int getIndex(int chunkX, int chunkZ) {
+        int dx = chunkX - minChunkX;
+        int dz = chunkZ - minChunkZ;
+        if (dx < 0 || dx >= SIZE || dz < 0 || dz >= SIZE) {
+            throw new IllegalStateException("Requested chunk " + chunkX + ", " + chunkZ + " outside of region centered on "
+                + (minChunkX + RADIUS) + ", " + (minChunkZ + RADIUS));
+        }
+        return dx + dz * SIZE;
+    }
+
+    /* Blocks */
+
+    @Override
+    public BlockState getBlockState(BlockPos pos) {
+        return getPrimer(pos.getX() >> 4, pos.getZ() >> 4).getBlockState(pos);
+    }
+
+    @Override
+    public FluidState getFluidState(BlockPos pos) {
+        return getBlockState(pos).getFluidState();
+    }
+
+    @Nullable
+    @Override
+    public TileEntity getTileEntity(BlockPos pos) {
+        return getPrimer(pos.getX() >> 4, pos.getZ() >> 4).getTileEntity(pos);
+    }
+
+    @Override
+    public boolean setBlockState(BlockPos pos, BlockState state, int flags, int recursionLeft) {
+        setBlockStateCalls++;
+        currentCounter[0]++;
+
+        int index = getIndex(pos.getX() >> 4, pos.getZ() >> 4);
+        ChunkPrimer chunk = chunks[index];
+        chunk.setBlockState(pos, state, false);
+        if (pos.getY() >= 0 && pos.getY() < 256) {
+            dirtySections[index] |= 1 << (pos.getY() >> 4);
+        }
+
+        // Create tile entities immediately, like WorldGenRegion does, so pieces can fill chests, furnaces etc.
+        if (state.hasTileEntity()) {
+            TileEntity tileEntity = state.createTileEntity(this);
+            if (tileEntity != null) {
+                tileEntity.setPos(pos.toImmutable());
+                chunk.addTileEntity(tileEntity);
+            }
+        } else {
+            chunk.removeTileEntity(pos);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean removeBlock(BlockPos pos, boolean isMoving) {
+        return setBlockState(pos, Blocks.AIR.getDefaultState(), 3);
+    }
+
+    @Override
+    public boolean destroyBlock(BlockPos pos, boolean dropBlock, @Nullable Entity entity, int recursionLeft) {
+        return setBlockState(pos, Blocks.AIR.getDefaultState(), 3);
+    }
+
+    @Override
+    public boolean hasBlockState(BlockPos pos, Predicate<BlockState> state) {
+        return state.test(getBlockState(pos));
+    }
+
+    /* Chunks & terrain */
+
+    @Nullable
+    @Override
+    public IChunk getChunk(int x, int z, ChunkStatus requiredStatus, boolean nonnull) {
+        if (!nonnull && !chunkExists(x, z)) {
+            return null;
+        }
+        return getPrimer(x, z);
+    }
+
+    @Override
+    public boolean chunkExists(int chunkX, int chunkZ) {
+        int dx = chunkX - minChunkX;
+        int dz = chunkZ - minChunkZ;
+        return dx >= 0 && dx < SIZE && dz >= 0 && dz < SIZE;
+    }
+
+    @Nullable
+    @Override
+    public IBlockReader getBlockReaderForCollision(int chunkX, int chunkZ) {
+        return getPrimer(chunkX, chunkZ);
+    }
+
+    @Override
+    public int getHeight(Heightmap.Type heightmapType, int x, int z) {
+        return SURFACE_Y + 1;
+    }
+
+    @Override
+    public BlockPos getHeight(Heightmap.Type heightmapType, BlockPos pos) {
+        return new BlockPos(pos.getX(), getHeight(heightmapType, pos.getX(), pos.getZ()), pos.getZ());
+    }
+
+    @Override
+    public int getSeaLevel() {
+        return SURFACE_Y;
+    }
+
+    @Override
+    public Biome getBiome(BlockPos pos) {
+        return biome;
+    }
+
+    @Override
+    public Biome getNoiseBiomeRaw(int x, int y, int z) {
+        return biome;
+    }
+
+    @Override
+    public long getSeed() {
+        return seed;
+    }
+
+    @Override
+    public Stream<? extends StructureStart<?>> func_241827_a(SectionPos sectionPos, Structure<?> structure) {
+        return Stream.empty();
+    }
+
+    @Override
+    public Random getRandom() {
+        return random;
+    }
+
+    @Override
+    public ITickList<Block> getPendingBlockTicks() {
+        return EmptyTickList.get();
+    }
+
+    @Override
+    public ITickList<Fluid> getPendingFluidTicks() {
+        return EmptyTickList.get();
+    }
+
+    @Override
+    public WorldBorder getWorldBorder() {
+        return worldBorder;
+    }
+
+    @Override
+    public boolean isRemote() {
+        return false;
+    }
+
+    @Override
+    public int getSkylightSubtracted() {
+        return 0;
+    }
+
+    @Override
+    public float func_230487_a_(Direction direction, boolean shade) {
+        return 1.0F;
+    }
+
+    @Override
+    public int getBlockColor(BlockPos pos, ColorResolver colorResolver) {
+        return colorResolver.getColor(biome, pos.getX(), pos.getZ());
+    }
+
+    /* Entities, effects & everything else needing a server */
+
+    @Override
+    public List<Entity> getEntitiesInAABBexcluding(@Nullable Entity entity, AxisAlignedBB boundingBox, @Nullable Predicate<? super Entity> predicate) {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public <T extends Entity> List<T> getEntitiesWithinAABB(Class<? extends T> clazz, AxisAlignedBB aabb, @Nullable Predicate<? super T> filter) {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public List<? extends PlayerEntity> getPlayers() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public void playSound(@Nullable PlayerEntity player, BlockPos pos, SoundEvent sound, SoundCategory category, float volume, float pitch) {
+    }
+
+    @Override
+    public void addParticle(IParticleData particleData, double x, double y, double z, double xSpeed, double ySpeed, double zSpeed) {
+    }
+
+    @Override
+    public void playEvent(@Nullable PlayerEntity player, int type, BlockPos pos, int data) {
+    }
+
+    @Override
+    public ServerWorld getWorld() {
+        throw new UnsupportedOperationException("No server world in benchmarks");
+    }
+
+    @Override
+    public IWorldInfo getWorldInfo() {
+        throw new UnsupportedOperationException("No world info in benchmarks");
+    }
+
+    @Override
+    public DifficultyInstance getDifficultyForLocation(BlockPos pos) {
+        throw new UnsupportedOperationException("No difficulty in benchmarks");
+    }
+
+    @Override
+    public AbstractChunkProvider getChunkProvider() {
+        throw new UnsupportedOperationException("No chunk provider in benchmarks");
+    }
+
+    @Override
+    public BiomeManager getBiomeManager() {
+        throw new UnsupportedOperationException("No biome manager in benchmarks");
+    }
+
+    @Override
+    public DimensionType getDimensionType() {
+        throw new UnsupportedOperationException("No dimension type in benchmarks");
+    }
+
+    @Override
+    public DynamicRegistries func_241828_r() {
+        throw new UnsupportedOperationException("No dynamic registries in benchmarks");
+    }
+
+    @Override
+    public WorldLightManager getLightManager() {
+        throw new UnsupportedOperationException("No lighting in benchmarks");
+    }
+}
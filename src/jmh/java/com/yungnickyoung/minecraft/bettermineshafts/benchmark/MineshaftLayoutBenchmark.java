@@ -0,0 +1,120 @@
+package com.yungnickyoung.minecraft.bettermineshafts.benchmark;
+
+import com.yungnickyoung.minecraft.bettermineshafts.config.ConfigSnapshot;
+import com.yungnickyoung.minecraft.bettermineshafts.world.generator.MineshaftPieceList;
+import com.yungnickyoung.minecraft.bettermineshafts.world.generator.MineshaftVariantSettings;
+import com.yungnickyoung.minecraft.bettermineshafts.world.generator.MineshaftVariants;
+import net.minecraft.world.gen.feature.structure.StructurePiece;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures mineshaft layout, i.e. everything the structure start does before any blocks are placed:
+ * the vertical entrance plus the full buildComponent tree hanging off of it.
+ *
+ * Reported metrics:
+ * <ul>
+ *     <li>layout: mineshafts laid out per second</li>
+ *     <li>layout:pieces: pieces laid out per second</li>
+ *     <li>layout:gc.alloc.rate.norm: bytes allocated per mineshaft (from the gc profiler)</li>
+ * </ul>
+ * The distribution of piece counts over all cases is printed once per variant during setup,
+ * so changes to smallShaftPieceChainLength or the spawn rates show up as a shifted histogram.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class MineshaftLayoutBenchmark {
+    /** Index into the default variant list. The index one past the end is the default variant. */
+    @Param({"0", "1", "2", "3", "4", "5", "6", "7", "8", "9"})
+    public int variant;
+
+    private MineshaftVariantSettings settings;
+    private int nextCase = 0;
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Counters {
+        public long pieces;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            pieces = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        BenchmarkFixtures.bootstrap();
+        MineshaftVariants variants = MineshaftVariants.get();
+        settings = variant < variants.getVariants().size()
+            ? variants.getVariants().get(variant)
+            : variants.getDefault();
+        printPieceCountDistribution();
+    }
+
+    @Benchmark
+    public MineshaftPieceList layout(Counters counters) {
+        MineshaftPieceList pieces = BenchmarkFixtures.layout(nextCase, settings);
+        nextCase = (nextCase + 1) % BenchmarkFixtures.CASE_COUNT;
+        counters.pieces += pieces.size();
+        return pieces;
+    }
+
+    /**
+     * Lays out every case once and prints the piece count distribution, along with how often each piece type shows up.
+     */
+    private void printPieceCountDistribution() {
+        int[] counts = new int[BenchmarkFixtures.CASE_COUNT];
+        Map<String, Integer> pieceTypes = new TreeMap<>();
+        int capped = 0;
+        int maxPieces = ConfigSnapshot.get().maxPiecesPerMineshaft;
+
+        for (int i = 0; i < BenchmarkFixtures.CASE_COUNT; i++) {
+            MineshaftPieceList pieces = BenchmarkFixtures.layout(i, settings);
+            counts[i] = pieces.size();
+            if (counts[i] >= maxPieces) capped++;
+            for (StructurePiece piece : pieces) {
+                pieceTypes.merge(piece.getClass().getSimpleName(), 1, Integer::sum);
+            }
+        }
+
+        Arrays.sort(counts);
+        long total = 0;
+        for (int count : counts) {
+            total += count;
+        }
+
+        StringBuilder out = new StringBuilder();
+        out.append(String.format("%nPiece counts for variant %d over %d cases:%n", variant, counts.length));
+        out.append(String.format("  min %d, p50 %d, p90 %d, max %d, mean %.1f, hit piece cap %d times%n",
+            counts[0],
+            counts[counts.length / 2],
+            counts[counts.length * 9 / 10],
+            counts[counts.length - 1],
+            total / (double) counts.length,
+            capped));
+
+        // Histogram in buckets of 25 pieces
+        int bucketSize = 25;
+        for (int bucket = counts[0] / bucketSize; bucket <= counts[counts.length - 1] / bucketSize; bucket++) {
+            int n = 0;
+            for (int count : counts) {
+                if (count / bucketSize == bucket) n++;
+            }
+            char[] bar = new char[n];
+            Arrays.fill(bar, '#');
+            out.append(String.format("  %4d-%-4d | %s%n", bucket * bucketSize, bucket * bucketSize + bucketSize - 1, new String(bar)));
+        }
+
+        pieceTypes.forEach((type, n) -> out.append(String.format("  %-20s %.1f per mineshaft%n", type, n / (double) counts.length)));
+        System.out.print(out);
+    }
+}
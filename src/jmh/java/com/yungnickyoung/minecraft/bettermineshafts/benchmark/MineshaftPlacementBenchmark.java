@@ -0,0 +1,212 @@
+package com.yungnickyoung.minecraft.bettermineshafts.benchmark;
+
+import com.yungnickyoung.minecraft.bettermineshafts.world.generator.MineshaftPieceList;
+import com.yungnickyoung.minecraft.bettermineshafts.world.generator.MineshaftVariantSettings;
+import com.yungnickyoung.minecraft.bettermineshafts.world.generator.MineshaftVariants;
+import it.unimi.dsi.fastutil.longs.LongLinkedOpenHashSet;
+import net.minecraft.util.SharedSeedRandom;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.util.math.MutableBoundingBox;
+import net.minecraft.world.gen.GenerationStage;
+import net.minecraft.world.gen.feature.structure.StructurePiece;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures block placement, i.e. func_230383_a_ on every piece, for pre-built mineshafts.
+ *
+ * Each operation places every piece intersecting one chunk into that chunk, the same way a structure start does
+ * during decoration. The benchmark cycles through every chunk of every mineshaft in the fixed set of cases.
+ *
+ * Each chunk is placed into its own region of flat terrain. Every invocation places a batch of chunks, one per region,
+ * and the regions are restored between invocations. Batching keeps invocations long enough for the per-invocation setup
+ * not to distort timings, and restoring the regions allocates nothing, so it doesn't count towards gc.alloc.rate.norm.
+ *
+ * Reported metrics:
+ * <ul>
+ *     <li>placeChunk: ns per chunk</li>
+ *     <li>placeChunk:voxels: ns per voxel, i.e. per setBlockState call</li>
+ *     <li>placeChunk:gc.alloc.rate.norm: bytes allocated per chunk (from the gc profiler)</li>
+ * </ul>
+ * The number of setBlockState calls per piece type is printed once per variant during setup.
+ *
+ * Unlike a real structure start, pieces that fail to place are not removed from the piece list,
+ * so the same lists can be placed over and over.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class MineshaftPlacementBenchmark {
+    /** Index into the default variant list. The index one past the end is the default variant. */
+    @Param({"0", "1", "2", "3", "4", "5", "6", "7", "8", "9"})
+    public int variant;
+
+    private final MineshaftPieceList[] mineshafts = new MineshaftPieceList[BenchmarkFixtures.CASE_COUNT];
+
+    /** Number of chunks placed per invocation, each into its own region */
+    private static final int CHUNKS_PER_INVOCATION = 64;
+
+    /** Every (case, chunk) pair to place, as parallel arrays */
+    private int[] chunkCases;
+    private ChunkPos[] chunkPositions;
+    private MutableBoundingBox[] chunkBoxes;
+    private BlockPos[] chunkBlockPositions;
+    private int nextChunk = 0;
+
+    /** Region, random and chunk index of each chunk in the current batch */
+    private final InMemorySeedReader[] worlds = new InMemorySeedReader[CHUNKS_PER_INVOCATION];
+    private final SharedSeedRandom[] randoms = new SharedSeedRandom[CHUNKS_PER_INVOCATION];
+    private final int[] batch = new int[CHUNKS_PER_INVOCATION];
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Counters {
+        public long voxels;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            voxels = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        BenchmarkFixtures.bootstrap();
+        BenchmarkFixtures.disableMinecarts();
+        MineshaftVariants variants = MineshaftVariants.get();
+        MineshaftVariantSettings settings = variant < variants.getVariants().size()
+            ? variants.getVariants().get(variant)
+            : variants.getDefault();
+
+        List<Integer> cases = new ArrayList<>();
+        List<Long> positions = new ArrayList<>();
+        for (int i = 0; i < BenchmarkFixtures.CASE_COUNT; i++) {
+            mineshafts[i] = BenchmarkFixtures.layout(i, settings);
+
+            // Collect every chunk the mineshaft touches, in the order pieces were added
+            LongLinkedOpenHashSet chunks = new LongLinkedOpenHashSet();
+            for (StructurePiece piece : mineshafts[i]) {
+                MutableBoundingBox pieceBox = piece.getBoundingBox();
+                for (int chunkX = pieceBox.minX >> 4; chunkX <= pieceBox.maxX >> 4; chunkX++) {
+                    for (int chunkZ = pieceBox.minZ >> 4; chunkZ <= pieceBox.maxZ >> 4; chunkZ++) {
+                        chunks.add(ChunkPos.asLong(chunkX, chunkZ));
+                    }
+                }
+            }
+            for (long chunk : chunks) {
+                cases.add(i);
+                positions.add(chunk);
+            }
+        }
+
+        // Everything describing a chunk is created up front, so that preparing a batch allocates nothing
+        chunkCases = cases.stream().mapToInt(Integer::intValue).toArray();
+        chunkPositions = new ChunkPos[positions.size()];
+        chunkBoxes = new MutableBoundingBox[positions.size()];
+        chunkBlockPositions = new BlockPos[positions.size()];
+        for (int i = 0; i < positions.size(); i++) {
+            ChunkPos chunkPos = new ChunkPos(positions.get(i));
+            chunkPositions[i] = chunkPos;
+            chunkBoxes[i] = new MutableBoundingBox(chunkPos.getXStart(), chunkPos.getZStart(), chunkPos.getXEnd(), chunkPos.getZEnd());
+            chunkBlockPositions[i] = chunkPos.asBlockPos();
+        }
+
+        for (int i = 0; i < CHUNKS_PER_INVOCATION; i++) {
+            worlds[i] = new InMemorySeedReader(0, BenchmarkFixtures.biome());
+            randoms[i] = new SharedSeedRandom();
+        }
+
+        printSetBlockStateCalls();
+    }
+
+    @Setup(Level.Invocation)
+    public void prepareBatch() {
+        for (int i = 0; i < CHUNKS_PER_INVOCATION; i++) {
+            batch[i] = nextChunk;
+            prepareChunk(nextChunk, worlds[i], randoms[i]);
+            nextChunk = (nextChunk + 1) % chunkCases.length;
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CHUNKS_PER_INVOCATION)
+    public void placeChunk(Counters counters) {
+        for (int i = 0; i < CHUNKS_PER_INVOCATION; i++) {
+            placeChunk(batch[i], worlds[i], randoms[i]);
+            counters.voxels += worlds[i].setBlockStateCalls;
+        }
+    }
+
+    /**
+     * Restores the given region and seeds the random for placing the given chunk, the same way vanilla decoration does.
+     */
+    private void prepareChunk(int index, InMemorySeedReader world, SharedSeedRandom random) {
+        ChunkPos chunkPos = chunkPositions[index];
+        world.reset(chunkPos.x, chunkPos.z);
+
+        long decorationSeed = random.setDecorationSeed(BenchmarkFixtures.SEEDS[chunkCases[index]], chunkPos.getXStart(), chunkPos.getZStart());
+        random.setFeatureSeed(decorationSeed, 0, GenerationStage.Decoration.UNDERGROUND_STRUCTURES.ordinal());
+    }
+
+    private void placeChunk(int index, InMemorySeedReader world, SharedSeedRandom random) {
+        MutableBoundingBox box = chunkBoxes[index];
+        for (StructurePiece piece : mineshafts[chunkCases[index]]) {
+            if (piece.getBoundingBox().intersectsWith(box)) {
+                piece.func_230383_a_(world, null, null, random, box, chunkPositions[index], chunkBlockPositions[index]);
+            }
+        }
+    }
+
+    /**
+     * Places every chunk once, attributing setBlockState calls to the type of piece making them, and prints the totals.
+     */
+    private void printSetBlockStateCalls() {
+        Map<String, long[]> callsByType = new TreeMap<>();
+        Map<String, long[]> placementsByType = new TreeMap<>();
+        Map<String, long[]> piecesByType = new TreeMap<>();
+        long totalCalls = 0;
+
+        for (MineshaftPieceList mineshaft : mineshafts) {
+            for (StructurePiece piece : mineshaft) {
+                piecesByType.computeIfAbsent(piece.getClass().getSimpleName(), type -> new long[1])[0]++;
+            }
+        }
+
+        InMemorySeedReader world = worlds[0];
+        SharedSeedRandom random = randoms[0];
+        for (int i = 0; i < chunkCases.length; i++) {
+            prepareChunk(i, world, random);
+            MutableBoundingBox box = chunkBoxes[i];
+            for (StructurePiece piece : mineshafts[chunkCases[i]]) {
+                if (piece.getBoundingBox().intersectsWith(box)) {
+                    String type = piece.getClass().getSimpleName();
+                    world.currentCounter = callsByType.computeIfAbsent(type, t -> new long[1]);
+                    placementsByType.computeIfAbsent(type, t -> new long[1])[0]++;
+                    piece.func_230383_a_(world, null, null, random, box, chunkPositions[i], chunkBlockPositions[i]);
+                }
+            }
+            totalCalls += world.setBlockStateCalls;
+        }
+        world.currentCounter = new long[1];
+
+        StringBuilder out = new StringBuilder();
+        out.append(String.format("%nsetBlockState calls for variant %d over %d chunks (%.1f per chunk):%n",
+            variant, chunkCases.length, totalCalls / (double) chunkCases.length));
+        out.append(String.format("  %-20s %12s %12s %14s%n", "piece", "calls", "per piece", "per placement"));
+        callsByType.forEach((type, calls) -> out.append(String.format("  %-20s %12d %12.1f %14.1f%n",
+            type,
+            calls[0],
+            calls[0] / (double) piecesByType.get(type)[0],
+            calls[0] / (double) placementsByType.get(type)[0])));
+        System.out.print(out);
+    }
+}
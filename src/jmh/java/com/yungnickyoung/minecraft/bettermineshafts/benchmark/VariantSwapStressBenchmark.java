@@ -0,0 +1,90 @@
+package com.yungnickyoung.minecraft.bettermineshafts.benchmark;
+
+import com.yungnickyoung.minecraft.bettermineshafts.world.generator.MineshaftVariantSettings;
+import com.yungnickyoung.minecraft.bettermineshafts.world.generator.MineshaftVariants;
+import net.minecraft.util.registry.WorldGenRegistries;
+import net.minecraft.world.biome.Biome;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stress test for publishing {@link MineshaftVariants} while worldgen threads are reading them.
+ *
+ * Reader threads do what a structure start does: capture the current variants once, then look up the variant
+ * for a biome. Every lookup is checked against the captured snapshot:
+ * the variant must be one of the snapshot's own variants (by identity), be found again by its ID,
+ * and be returned again for the same biome. Meanwhile, a publisher thread keeps publishing freshly built variants,
+ * so every read races with a swap.
+ *
+ * Any inconsistency throws, which fails the run. The reported times are only a rough indication of lookup cost under contention.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Group)
+public class VariantSwapStressBenchmark {
+    private Biome[] biomes;
+
+    @State(Scope.Thread)
+    public static class ReaderState {
+        private int nextBiome = 0;
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        BenchmarkFixtures.bootstrap();
+        List<Biome> allBiomes = new ArrayList<>();
+        WorldGenRegistries.BIOME.forEach(allBiomes::add);
+        biomes = allBiomes.toArray(new Biome[0]);
+        MineshaftVariants.publish(MineshaftVariants.createDefault());
+    }
+
+    @Benchmark
+    @Group("swap")
+    @GroupThreads(3)
+    public MineshaftVariantSettings read(ReaderState reader) {
+        Biome biome = biomes[reader.nextBiome];
+        reader.nextBiome = (reader.nextBiome + 1) % biomes.length;
+
+        MineshaftVariants snapshot = MineshaftVariants.get();
+        MineshaftVariantSettings settings = snapshot.getVariantForBiome(biome);
+
+        if (!belongsTo(settings, snapshot)) {
+            throw new IllegalStateException("Variant " + settings.id + " for biome " + biome.getRegistryName() + " isn't part of the snapshot it was looked up in");
+        }
+        if (snapshot.getVariantById(settings.id) != settings) {
+            throw new IllegalStateException("Variant " + settings.id + " isn't found by its own ID in its snapshot");
+        }
+        if (snapshot.getVariantForBiome(biome) != settings) {
+            throw new IllegalStateException("Snapshot returned different variants for biome " + biome.getRegistryName());
+        }
+        if (settings.getCompiledMainSelector() == null || settings.getCompiledLegSelector() == null) {
+            throw new IllegalStateException("Variant " + settings.id + " was published without compiled selectors");
+        }
+        return settings;
+    }
+
+    @Benchmark
+    @Group("swap")
+    @GroupThreads(1)
+    public void publish() {
+        MineshaftVariants.publish(MineshaftVariants.createDefault());
+    }
+
+    private static boolean belongsTo(MineshaftVariantSettings settings, MineshaftVariants snapshot) {
+        if (settings == snapshot.getDefault()) {
+            return true;
+        }
+        for (MineshaftVariantSettings variant : snapshot.getVariants()) {
+            if (variant == settings) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
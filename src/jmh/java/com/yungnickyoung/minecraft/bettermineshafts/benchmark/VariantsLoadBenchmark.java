@@ -0,0 +1,105 @@
+package com.yungnickyoung.minecraft.bettermineshafts.benchmark;
+
+import com.yungnickyoung.minecraft.bettermineshafts.world.generator.MineshaftVariants;
+import com.yungnickyoung.minecraft.bettermineshafts.world.generator.MineshaftVariantsCache;
+import com.yungnickyoung.minecraft.yungsapi.io.JSON;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures loading variants when a server starts.
+ *
+ * parseJson and readCache compare the two ways variants can be read:
+ * parsing variants.json with Gson, and reading the binary variants cache built from it.
+ * Reading the cache includes hashing variants.json, since that is needed to check the cache is up to date,
+ * but neither includes publishing the variants, which costs the same either way.
+ *
+ * loadPerDimension and loadPerServer compare how often variants are loaded:
+ * once per dimension world, as they used to be on every world load, and once per server start, as they are now.
+ * Each load does everything ModConfig does: reading the cache, validating and publishing.
+ * Run with e.g. -p dimensions=12 to see the difference for a modpack with many dimensions.
+ *
+ * Everything operates on the default variants.json.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class VariantsLoadBenchmark {
+    /** Number of dimension worlds loaded per server start. Vanilla has three: the overworld, the Nether and the End. */
+    @Param({"3"})
+    public int dimensions;
+
+    private Path directory;
+    private Path jsonPath;
+    private Path cachePath;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        BenchmarkFixtures.bootstrap();
+        directory = Files.createTempDirectory("bettermineshafts-variants");
+        jsonPath = directory.resolve("variants.json");
+        cachePath = directory.resolve("variants.cache");
+
+        // Build the cache the same way ModConfig does: parse, publish, then write
+        JSON.createJsonFileFromObject(jsonPath, MineshaftVariants.createDefault());
+        MineshaftVariants variants = JSON.loadObjectFromJsonFile(jsonPath, MineshaftVariants.class);
+        MineshaftVariants.publish(variants);
+        MineshaftVariantsCache.write(cachePath, MineshaftVariantsCache.hash(Files.readAllBytes(jsonPath)), variants);
+
+        if (readCache() == null) {
+            throw new IllegalStateException("Variants cache written during setup couldn't be read back");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(jsonPath);
+        Files.deleteIfExists(cachePath);
+        Files.deleteIfExists(directory);
+    }
+
+    @Benchmark
+    public MineshaftVariants parseJson() throws IOException {
+        return JSON.loadObjectFromJsonFile(jsonPath, MineshaftVariants.class);
+    }
+
+    @Benchmark
+    public MineshaftVariants readCache() throws IOException {
+        return MineshaftVariantsCache.read(cachePath, MineshaftVariantsCache.hash(Files.readAllBytes(jsonPath)));
+    }
+
+    @Benchmark
+    public MineshaftVariants loadPerDimension() throws IOException {
+        MineshaftVariants variants = null;
+        for (int i = 0; i < dimensions; i++) {
+            variants = load();
+        }
+        return variants;
+    }
+
+    @Benchmark
+    public MineshaftVariants loadPerServer() throws IOException {
+        return load();
+    }
+
+    /**
+     * Loads the variants the same way ModConfig does when variants.json hasn't changed.
+     */
+    private MineshaftVariants load() throws IOException {
+        MineshaftVariants variants = readCache();
+        List<String> problems = variants.validate();
+        if (!problems.isEmpty()) {
+            throw new IllegalStateException("Default variants are invalid: " + problems);
+        }
+        MineshaftVariants.publish(variants);
+        return variants;
+    }
+}
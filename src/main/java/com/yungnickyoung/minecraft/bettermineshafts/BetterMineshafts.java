@@ -1,15 +1,14 @@
 package com.yungnickyoung.minecraft.bettermineshafts;
 
 import com.yungnickyoung.minecraft.bettermineshafts.config.BMSettings;
+import com.yungnickyoung.minecraft.bettermineshafts.init.ModCommands;
+import com.yungnickyoung.minecraft.bettermineshafts.init.ModMetrics;
 import com.yungnickyoung.minecraft.bettermineshafts.init.ModStructures;
 import com.yungnickyoung.minecraft.bettermineshafts.init.ModConfig;
-import io.netty.util.internal.ConcurrentSet;
 import net.minecraftforge.fml.common.Mod;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import java.util.concurrent.atomic.AtomicInteger;
-
 /**
  * Entrypoint for YUNG's Better Mineshafts.
  *
@@ -33,11 +32,6 @@ import java.util.concurrent.atomic.AtomicInteger;
 public class BetterMineshafts {
     public static final Logger LOGGER = LogManager.getLogger(BMSettings.MOD_ID);
 
-    // Debug variables used in development
-    public static final boolean DEBUG_LOG = false;
-    public static ConcurrentSet<Integer> surfaceEntrances = new ConcurrentSet<>();
-    public static AtomicInteger count = new AtomicInteger(0);
-
     public BetterMineshafts() {
         init();
     }
@@ -45,5 +39,7 @@ public class BetterMineshafts {
     private void init() {
         ModStructures.init();
         ModConfig.init();
+        ModCommands.init();
+        ModMetrics.init();
     }
 }
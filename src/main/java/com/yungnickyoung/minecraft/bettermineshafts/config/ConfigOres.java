@@ -3,6 +3,9 @@ package com.yungnickyoung.minecraft.bettermineshafts.config;
 
 import net.minecraftforge.common.ForgeConfigSpec;
 
+import java.util.Collections;
+import java.util.List;
+
 public class ConfigOres {
     public final ForgeConfigSpec.ConfigValue<Boolean> enabled;
     public final ForgeConfigSpec.ConfigValue<Integer> cobble;
@@ -13,6 +16,7 @@ public class ConfigOres {
     public final ForgeConfigSpec.ConfigValue<Integer> lapis;
     public final ForgeConfigSpec.ConfigValue<Integer> emerald;
     public final ForgeConfigSpec.ConfigValue<Integer> diamond;
+    public final ForgeConfigSpec.ConfigValue<List<? extends String>> extraOres;
 
     public ConfigOres(final ForgeConfigSpec.Builder BUILDER) {
         BUILDER
@@ -82,6 +86,16 @@ public class ConfigOres {
             .worldRestart()
             .defineInRange("Diamond Spawn Chance", 1, 0, 100);
 
+        extraOres = BUILDER
+            .comment(
+                " Additional blocks ore deposits may contain, e.g. ores from other mods.\n" +
+                " Each entry has the form \"modid:block=chance\", e.g. \"minecraft:nether_gold_ore=2\".\n" +
+                " Like the chances above, each chance must be between 0 and 100.\n" +
+                " All chances, including the ones above, should add up to 100. If they don't, they are scaled to add up to 100.\n" +
+                " Default: []")
+            .worldRestart()
+            .defineList("Extra Ore Spawn Chances", Collections.emptyList(), entry -> entry instanceof String);
+
         BUILDER.pop();
     }
 }
@@ -0,0 +1,59 @@
+package com.yungnickyoung.minecraft.bettermineshafts.config;
+
+import net.minecraftforge.common.ForgeConfigSpec;
+
+public class ConfigPerformance {
+    public final ForgeConfigSpec.ConfigValue<Integer> maxPiecesPerMineshaft;
+    public final ForgeConfigSpec.ConfigValue<Integer> layoutTimeBudget;
+    public final ForgeConfigSpec.ConfigValue<Integer> metricsLogInterval;
+    public final ForgeConfigSpec.ConfigValue<Boolean> estimateSurfaceAtStart;
+
+    public ConfigPerformance(final ForgeConfigSpec.Builder BUILDER) {
+        BUILDER
+            .comment(
+                "##########################################################################################################\n" +
+                "# Limits on the work done while generating a single mineshaft, and generation metrics.\n" +
+                "##########################################################################################################")
+            .push("Performance");
+
+        maxPiecesPerMineshaft = BUILDER
+            .worldRestart()
+            .comment(
+                " The maximum number of pieces a single mineshaft can be made of.\n" +
+                " Once a mineshaft reaches this many pieces, its remaining tunnels are cut short.\n" +
+                " Default: 5000")
+            .defineInRange("Max Pieces Per Mineshaft", 5000, 1, 100000);
+
+        layoutTimeBudget = BUILDER
+            .worldRestart()
+            .comment(
+                " The maximum time in milliseconds spent laying out a single mineshaft.\n" +
+                " Once a mineshaft runs out of time, its remaining tunnels are cut short.\n" +
+                " WARNING: enabling this makes layouts depend on timing. The same seed may produce a smaller mineshaft\n" +
+                " if the server is busy or paused (e.g. for garbage collection) while it is being laid out.\n" +
+                " The piece limit above is deterministic, and is usually the better way to cap mineshaft size.\n" +
+                " Set to 0 to disable the time limit.\n" +
+                " Default: 0")
+            .defineInRange("Layout Time Budget (ms)", 0, 0, 60000);
+
+        metricsLogInterval = BUILDER
+            .comment(
+                " How often in seconds to write generation metrics to the log.\n" +
+                " Metrics are always collected and can be viewed at any time with /bettermineshafts metrics.\n" +
+                " Set to 0 to disable logging them.\n" +
+                " Default: 0")
+            .defineInRange("Metrics Log Interval (s)", 0, 0, 86400);
+
+        estimateSurfaceAtStart = BUILDER
+            .worldRestart()
+            .comment(
+                " Whether to decide where surface entrances go as soon as a mineshaft is laid out, using the world generator's\n" +
+                " estimate of the terrain height, instead of checking the actual terrain once it has generated.\n" +
+                " This avoids terrain checks while placing blocks and keeps the entrance from reaching into unneeded chunks,\n" +
+                " but the estimate ignores caves and features, so entrances may occasionally open slightly above or below the surface.\n" +
+                " Default: false")
+            .define("Estimate Surface Entrances At Start", false);
+
+        BUILDER.pop();
+    }
+}
@@ -0,0 +1,120 @@
+package com.yungnickyoung.minecraft.bettermineshafts.config;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable copy of all config values, for use during worldgen.
+ *
+ * Reading a ForgeConfigSpec value goes through Forge's config lookup and boxes the result,
+ * which adds up in loops that run for every block or piece. Worldgen code should read from
+ * the current snapshot instead, which is rebuilt whenever the config is loaded or reloaded.
+ *
+ * Values keep the same primitive types as their config values, so comparisons behave exactly as before.
+ */
+public final class ConfigSnapshot {
+    private static volatile ConfigSnapshot current;
+
+    public final double mineshaftSpawnRate;
+    public final int minY;
+    public final int maxY;
+
+    // Ore deposits
+    public final boolean oresEnabled;
+    public final int cobbleChance;
+    public final int coalChance;
+    public final int ironChance;
+    public final int redstoneChance;
+    public final int goldChance;
+    public final int lapisChance;
+    public final int emeraldChance;
+    public final int diamondChance;
+    public final List<String> extraOres;
+
+    // Spawn rates
+    public final double lanternSpawnRate;
+    public final double torchSpawnRate;
+    public final double workstationSpawnRate;
+    public final double workstationDungeonSpawnRate;
+    public final double smallShaftSpawnRate;
+    public final double cobwebSpawnRate;
+    public final double smallShaftChestMinecartSpawnRate;
+    public final double smallShaftTntMinecartSpawnRate;
+    public final double mainShaftChestMinecartSpawnRate;
+    public final double mainShaftTntMinecartSpawnRate;
+    public final int zombieVillagerRoomSpawnRate;
+    public final int smallShaftPieceChainLength;
+    public final int smallTunnelWeight;
+    public final int smallTunnelStairsWeight;
+    public final int smallTunnelTurnWeight;
+    public final int layeredIntersection4Weight;
+    public final int layeredIntersection5Weight;
+
+    // Performance
+    public final int maxPiecesPerMineshaft;
+    public final int layoutTimeBudget;
+    public final int metricsLogInterval;
+    public final boolean estimateSurfaceAtStart;
+
+    private ConfigSnapshot() {
+        mineshaftSpawnRate = Configuration.mineshaftSpawnRate.get();
+        minY = Configuration.minY.get();
+        maxY = Configuration.maxY.get();
+
+        oresEnabled = Configuration.ores.enabled.get();
+        cobbleChance = Configuration.ores.cobble.get();
+        coalChance = Configuration.ores.coal.get();
+        ironChance = Configuration.ores.iron.get();
+        redstoneChance = Configuration.ores.redstone.get();
+        goldChance = Configuration.ores.gold.get();
+        lapisChance = Configuration.ores.lapis.get();
+        emeraldChance = Configuration.ores.emerald.get();
+        diamondChance = Configuration.ores.diamond.get();
+        extraOres = Collections.unmodifiableList(new ArrayList<>(Configuration.ores.extraOres.get()));
+
+        lanternSpawnRate = Configuration.spawnRates.lanternSpawnRate.get();
+        torchSpawnRate = Configuration.spawnRates.torchSpawnRate.get();
+        workstationSpawnRate = Configuration.spawnRates.workstationSpawnRate.get();
+        workstationDungeonSpawnRate = Configuration.spawnRates.workstationDungeonSpawnRate.get();
+        smallShaftSpawnRate = Configuration.spawnRates.smallShaftSpawnRate.get();
+        cobwebSpawnRate = Configuration.spawnRates.cobwebSpawnRate.get();
+        smallShaftChestMinecartSpawnRate = Configuration.spawnRates.smallShaftChestMinecartSpawnRate.get();
+        smallShaftTntMinecartSpawnRate = Configuration.spawnRates.smallShaftTntMinecartSpawnRate.get();
+        mainShaftChestMinecartSpawnRate = Configuration.spawnRates.mainShaftChestMinecartSpawnRate.get();
+        mainShaftTntMinecartSpawnRate = Configuration.spawnRates.mainShaftTntMinecartSpawnRate.get();
+        zombieVillagerRoomSpawnRate = Configuration.spawnRates.zombieVillagerRoomSpawnRate.get();
+        smallShaftPieceChainLength = Configuration.spawnRates.smallShaftPieceChainLength.get();
+        smallTunnelWeight = Configuration.spawnRates.smallTunnelWeight.get();
+        smallTunnelStairsWeight = Configuration.spawnRates.smallTunnelStairsWeight.get();
+        smallTunnelTurnWeight = Configuration.spawnRates.smallTunnelTurnWeight.get();
+        layeredIntersection4Weight = Configuration.spawnRates.layeredIntersection4Weight.get();
+        layeredIntersection5Weight = Configuration.spawnRates.layeredIntersection5Weight.get();
+
+        maxPiecesPerMineshaft = Configuration.performance.maxPiecesPerMineshaft.get();
+        layoutTimeBudget = Configuration.performance.layoutTimeBudget.get();
+        metricsLogInterval = Configuration.performance.metricsLogInterval.get();
+        estimateSurfaceAtStart = Configuration.performance.estimateSurfaceAtStart.get();
+    }
+
+    /**
+     * Returns the current snapshot, building it first if the config hasn't been snapshotted yet.
+     */
+    public static ConfigSnapshot get() {
+        ConfigSnapshot snapshot = current;
+        if (snapshot == null) {
+            snapshot = rebuild();
+        }
+        return snapshot;
+    }
+
+    /**
+     * Replaces the current snapshot with a fresh copy of the config values.
+     * Should be called whenever the config is loaded or reloaded.
+     */
+    public static ConfigSnapshot rebuild() {
+        ConfigSnapshot snapshot = new ConfigSnapshot();
+        current = snapshot;
+        return snapshot;
+    }
+}
@@ -15,6 +15,11 @@ public class ConfigSpawnRates {
     public final ForgeConfigSpec.ConfigValue<Double> mainShaftTntMinecartSpawnRate;
     public final ForgeConfigSpec.ConfigValue<Integer> zombieVillagerRoomSpawnRate;
     public final ForgeConfigSpec.ConfigValue<Integer> smallShaftPieceChainLength;
+    public final ForgeConfigSpec.ConfigValue<Integer> smallTunnelWeight;
+    public final ForgeConfigSpec.ConfigValue<Integer> smallTunnelStairsWeight;
+    public final ForgeConfigSpec.ConfigValue<Integer> smallTunnelTurnWeight;
+    public final ForgeConfigSpec.ConfigValue<Integer> layeredIntersection4Weight;
+    public final ForgeConfigSpec.ConfigValue<Integer> layeredIntersection5Weight;
 
     public ConfigSpawnRates(final ForgeConfigSpec.Builder BUILDER) {
         BUILDER
@@ -109,6 +114,51 @@ public class ConfigSpawnRates {
                 " Default: 9")
             .defineInRange("Small Shaft Piece Chain Length", 9, 0 ,1000);
 
+        BUILDER
+            .comment(
+                " Weights of the pieces making up small shafts. Each piece is chosen with a chance of its weight\n" +
+                " divided by the sum of all weights, e.g. with the defaults, a straight tunnel has a 60 / 100 = 60% chance.\n" +
+                " Intersections and turns can't be placed early on in a shaft, and intersections and stairs can't be placed\n" +
+                " right before the end of a shaft. In those places, the weight of the piece goes to another piece instead.")
+            .push("Small Shaft Piece Weights");
+
+        smallTunnelWeight = BUILDER
+            .worldRestart()
+            .comment(
+                " Weight of straight tunnels.\n" +
+                " Default: 60")
+            .defineInRange("Straight Tunnel Weight", 60, 1 ,1000);
+
+        smallTunnelStairsWeight = BUILDER
+            .worldRestart()
+            .comment(
+                " Weight of stairs.\n" +
+                " Default: 10")
+            .defineInRange("Stairs Weight", 10, 0 ,1000);
+
+        smallTunnelTurnWeight = BUILDER
+            .worldRestart()
+            .comment(
+                " Weight of turns.\n" +
+                " Default: 10")
+            .defineInRange("Turn Weight", 10, 0 ,1000);
+
+        layeredIntersection4Weight = BUILDER
+            .worldRestart()
+            .comment(
+                " Weight of two-level intersections with walkways along the sides.\n" +
+                " Default: 10")
+            .defineInRange("Two-Level Intersection Weight", 10, 0 ,1000);
+
+        layeredIntersection5Weight = BUILDER
+            .worldRestart()
+            .comment(
+                " Weight of two-level intersections connected by ladders.\n" +
+                " Default: 10")
+            .defineInRange("Ladder Intersection Weight", 10, 0 ,1000);
+
+        BUILDER.pop();
+
         BUILDER.pop();
     }
 }
@@ -12,6 +12,7 @@ public final class Configuration {
 
     public static final ConfigOres ores;
     public static final ConfigSpawnRates spawnRates;
+    public static final ConfigPerformance performance;
 
     static {
         BUILDER.push("YUNG's Better Mineshafts");
@@ -39,6 +40,7 @@ public final class Configuration {
 
         ores = new ConfigOres(BUILDER);
         spawnRates = new ConfigSpawnRates(BUILDER);
+        performance = new ConfigPerformance(BUILDER);
 
         BUILDER.pop();
         SPEC = BUILDER.build();
@@ -0,0 +1,61 @@
+package com.yungnickyoung.minecraft.bettermineshafts.init;
+
+import com.mojang.brigadier.context.CommandContext;
+import com.yungnickyoung.minecraft.bettermineshafts.BetterMineshafts;
+import com.yungnickyoung.minecraft.bettermineshafts.config.BMSettings;
+import com.yungnickyoung.minecraft.bettermineshafts.world.generator.MineshaftMetrics;
+import net.minecraft.command.CommandSource;
+import net.minecraft.command.Commands;
+import net.minecraft.util.text.StringTextComponent;
+import net.minecraftforge.common.MinecraftForge;
+import net.minecraftforge.event.RegisterCommandsEvent;
+
+public class ModCommands {
+    public static void init() {
+        MinecraftForge.EVENT_BUS.addListener(ModCommands::registerCommands);
+    }
+
+    /**
+     * Registers the /bettermineshafts command tree.
+     */
+    private static void registerCommands(RegisterCommandsEvent event) {
+        event.getDispatcher().register(Commands.literal(BMSettings.MOD_ID)
+            .requires(source -> source.hasPermissionLevel(2))
+            .then(Commands.literal("metrics")
+                .executes(ModCommands::printMetrics)
+                .then(Commands.literal("reset")
+                    .executes(ModCommands::resetMetrics)))
+            .then(Commands.literal("reload")
+                .executes(ModCommands::reloadVariants)));
+    }
+
+    private static int printMetrics(CommandContext<CommandSource> context) {
+        for (String line : MineshaftMetrics.report()) {
+            context.getSource().sendFeedback(new StringTextComponent(line), false);
+        }
+        return 1;
+    }
+
+    private static int resetMetrics(CommandContext<CommandSource> context) {
+        MineshaftMetrics.reset();
+        context.getSource().sendFeedback(new StringTextComponent("Better Mineshafts metrics reset."), true);
+        return 1;
+    }
+
+    private static int reloadVariants(CommandContext<CommandSource> context) {
+        CommandSource source = context.getSource();
+        source.sendFeedback(new StringTextComponent("Reloading Better Mineshafts variants.json..."), true);
+        ModConfig.reloadVariantsJSON().whenComplete((problems, throwable) -> source.getServer().execute(() -> {
+            if (throwable != null) {
+                BetterMineshafts.LOGGER.error("Error reloading Better Mineshafts variants.json file", throwable);
+                source.sendErrorMessage(new StringTextComponent("Error reloading variants.json: " + throwable));
+            } else if (!problems.isEmpty()) {
+                source.sendErrorMessage(new StringTextComponent("variants.json was not reloaded. Problems found:"));
+                problems.forEach(problem -> source.sendErrorMessage(new StringTextComponent(" - " + problem)));
+            } else {
+                source.sendFeedback(new StringTextComponent("Better Mineshafts variants.json reloaded."), true);
+            }
+        }));
+        return 1;
+    }
+}
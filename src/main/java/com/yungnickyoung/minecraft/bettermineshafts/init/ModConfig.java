@@ -1,14 +1,20 @@
 package com.yungnickyoung.minecraft.bettermineshafts.init;
 
+import com.google.gson.JsonParseException;
 import com.yungnickyoung.minecraft.bettermineshafts.BetterMineshafts;
 import com.yungnickyoung.minecraft.bettermineshafts.config.BMSettings;
+import com.yungnickyoung.minecraft.bettermineshafts.config.ConfigSnapshot;
 import com.yungnickyoung.minecraft.bettermineshafts.config.Configuration;
 import com.yungnickyoung.minecraft.bettermineshafts.world.generator.MineshaftVariants;
+import com.yungnickyoung.minecraft.bettermineshafts.world.generator.MineshaftVariantsCache;
+import com.yungnickyoung.minecraft.bettermineshafts.world.generator.OreDistribution;
 import com.yungnickyoung.minecraft.yungsapi.io.JSON;
+import net.minecraft.util.Util;
 import net.minecraftforge.common.BiomeDictionary;
 import net.minecraftforge.common.MinecraftForge;
-import net.minecraftforge.event.world.WorldEvent;
 import net.minecraftforge.fml.ModLoadingContext;
+import net.minecraftforge.fml.event.server.FMLServerAboutToStartEvent;
+import net.minecraftforge.fml.javafmlmod.FMLJavaModLoadingContext;
 import net.minecraftforge.fml.loading.FMLPaths;
 
 import java.io.File;
@@ -17,26 +23,46 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 public class ModConfig {
     public static void init() {
         initCustomFiles();
         // Register mod config with Forge
         ModLoadingContext.get().registerConfig(net.minecraftforge.fml.config.ModConfig.Type.COMMON, Configuration.SPEC, "bettermineshafts-forge-1_16.toml");
-        // Refresh JSON config on world load so that user doesn't have to restart MC
-        MinecraftForge.EVENT_BUS.addListener(ModConfig::onWorldLoad);
+        // Refresh JSON config whenever a server starts so that user doesn't have to restart MC.
+        // This runs once per server, rather than once per dimension.
+        MinecraftForge.EVENT_BUS.addListener(ModConfig::onServerAboutToStart);
+        // Keep worldgen's snapshot of the config up to date
+        FMLJavaModLoadingContext.get().getModEventBus().addListener(ModConfig::onConfigChange);
     }
 
-    private static void onWorldLoad(WorldEvent.Load event) {
+    private static void onConfigChange(net.minecraftforge.fml.config.ModConfig.ModConfigEvent event) {
+        if (event.getConfig().getSpec() == Configuration.SPEC) {
+            ConfigSnapshot.rebuild();
+            // Blocks from other mods aren't registered yet when the config is first loaded,
+            // so the ore distribution is only built for reloads, and at server start
+            if (event instanceof net.minecraftforge.fml.config.ModConfig.Reloading) {
+                OreDistribution.rebuild();
+            }
+        }
+    }
+
+    private static void onServerAboutToStart(FMLServerAboutToStartEvent event) {
+        // Written here rather than at init, so that biome types registered by other mods are included
+        createBiomeTagsTxt();
         loadVariantsJSON();
+        OreDistribution.rebuild();
     }
 
     private static void initCustomFiles() {
         createDirectory();
         createBaseReadMe();
         createJsonReadMe();
-        createBiomeTagsTxt();
-        loadVariantsJSON();
+        // Variants and biome tags aren't handled here, since nothing uses them until a server starts
     }
 
     private static void createDirectory() {
@@ -78,6 +104,9 @@ public class ModConfig {
             String readmeText =
                 "variants.json README\n" +
                 "\n" +
+                "Changes to variants.json are picked up when a world (or server) is started, or at any time with the /bettermineshafts reload command.\n" +
+                "Mineshafts already being generated keep the settings they started with.\n" +
+                "\n" +
                 "The variants.json file contains two properties:\n" +
                 " - variants: a list of all the biome-dependent Variant Settings objects (see below)\n" +
                 "      * NOTE - order is important! The list will be searched in order, and searching will be stopped at the first match.\n" +
@@ -88,6 +117,9 @@ public class ModConfig {
                 "\n" +
                 "Variant Settings: a single Variant Settings object is composed of the following properties.\n" +
                 "ALL of these properties are required for ALL Variants Settings objects, with the exception of the biomeTags for the defaultVariant.\n" +
+                " - id: a unique name for this variant, e.g. \"red_desert\". Saved with each mineshaft so that mineshafts in existing worlds\n" +
+                "      keep their variant even if you reorder, add, or remove other variants. Do not change the id of a variant once it has been used in a world!\n" +
+                "      The id \"default\" is reserved for the defaultVariant.\n" +
                 " - biomeTags: a list of lists of BiomeDictionary tags required for this variant to spawn. Only one of the lists of tags must be matched.\n" +
                 "      For example, by default we want the Red Desert mineshaft variant to spawn in rare desert AND rare mesa biomes.\n" +
                 "      All desert biomes have the HOT, DRY, and SANDY tags; all mesa biomes have the MESA tag.\n" +
@@ -186,33 +218,105 @@ public class ModConfig {
     }
 
     /**
-     * If the variants JSON file already exists, it loads its contents into MineshaftVariants.
-     * Otherwise, it creates a default JSON and from the default options in MineshaftVariants.
+     * Reads, validates and publishes variants.json on a background thread, so that variants can be tuned without a restart.
+     * Worldgen keeps using the current variants until the new ones are fully prepared, and mineshafts already
+     * being generated keep the variants they started with.
+     * @return A future completing with a description of each problem found. If there are none, the new variants have been published.
      */
-    private static void loadVariantsJSON() {
+    public static CompletableFuture<List<String>> reloadVariantsJSON() {
+        return CompletableFuture.supplyAsync(ModConfig::loadVariantsJSON, Util.getServerExecutor());
+    }
+
+    /**
+     * If the variants JSON file already exists, it loads its contents and publishes them as the current MineshaftVariants.
+     * Otherwise, it creates a default JSON from the default options in MineshaftVariants.
+     * If the file can't be read or is invalid, the current variants are kept.
+     * The binary variants cache is used to skip parsing the JSON if it hasn't changed,
+     * so this must only be called once all blocks are registered.
+     * @return A description of each problem found, or an empty list if the variants were published
+     */
+    private static List<String> loadVariantsJSON() {
+        long startTime = System.nanoTime();
+        boolean fromCache = false;
         Path jsonPath = Paths.get(FMLPaths.CONFIGDIR.get().toString(), BMSettings.CUSTOM_CONFIG_PATH, BMSettings.VERSION_PATH, "variants.json");
+        Path cachePath = jsonPath.resolveSibling("variants.cache");
         File jsonFile = new File(jsonPath.toString());
+        MineshaftVariants variants = null;
+        byte[] jsonHash = null;
+        boolean updateCache = false;
 
         if (!jsonFile.exists()) {
             // Create default file if JSON file doesn't already exist
+            variants = MineshaftVariants.createDefault();
             try {
-                JSON.createJsonFileFromObject(jsonPath, MineshaftVariants.get());
+                JSON.createJsonFileFromObject(jsonPath, variants);
             } catch (IOException e) {
                 BetterMineshafts.LOGGER.error("Unable to create JSON file! - {}", e.toString());
             }
         } else {
-            // If file already exists, load data into BlockSetSelectors' singleton instance
+            // If file already exists, load data into a new MineshaftVariants instance
             if (!jsonFile.canRead()) {
-                BetterMineshafts.LOGGER.error("Better Mineshafts variants.json file not readable! Using default configuration...");
-                return;
+                BetterMineshafts.LOGGER.error("Better Mineshafts variants.json file not readable! Using previous configuration...");
+                return Collections.singletonList("variants.json file not readable");
             }
 
-            try {
-                MineshaftVariants.instance = JSON.loadObjectFromJsonFile(jsonPath, MineshaftVariants.class);
-            } catch (IOException e) {
-                BetterMineshafts.LOGGER.error("Error loading Better Mineshafts variants.json file: {}", e.toString());
-                BetterMineshafts.LOGGER.error("Using default configuration...");
+            // Use the cache if it was built from the same JSON
+            jsonHash = hashVariantsJSON(jsonPath);
+            if (jsonHash != null) {
+                variants = MineshaftVariantsCache.read(cachePath, jsonHash);
+                fromCache = variants != null;
             }
+
+            if (variants == null) {
+                try {
+                    variants = JSON.loadObjectFromJsonFile(jsonPath, MineshaftVariants.class);
+                } catch (IOException | JsonParseException e) {
+                    BetterMineshafts.LOGGER.error("Error loading Better Mineshafts variants.json file: {}", e.toString());
+                    BetterMineshafts.LOGGER.error("Using previous configuration...");
+                    return Collections.singletonList("Error loading variants.json file: " + e);
+                }
+
+                // Gson returns null for an empty file, or one containing only null
+                if (variants == null) {
+                    BetterMineshafts.LOGGER.error("Better Mineshafts variants.json file is empty! Using previous configuration...");
+                    return Collections.singletonList("variants.json is empty");
+                }
+
+                // Only cache the parsed variants if the file didn't change while it was being parsed
+                updateCache = jsonHash != null && Arrays.equals(jsonHash, hashVariantsJSON(jsonPath));
+            }
+        }
+
+        List<String> problems = variants.validate();
+        if (!problems.isEmpty()) {
+            BetterMineshafts.LOGGER.error("Found {} problem(s) in Better Mineshafts variants.json file:", problems.size());
+            problems.forEach(problem -> BetterMineshafts.LOGGER.error(" - {}", problem));
+            BetterMineshafts.LOGGER.error("Using previous configuration...");
+            return problems;
+        }
+
+        // Assign and index variant IDs, compile block selectors, precompute which variant each biome uses,
+        // and swap the new variants in for worldgen
+        MineshaftVariants.publish(variants);
+
+        if (updateCache) {
+            MineshaftVariantsCache.write(cachePath, jsonHash, variants);
+        }
+
+        BetterMineshafts.LOGGER.info("Loaded {} Better Mineshafts variants from {} in {} ms",
+            variants.getVariants().size() + 1, fromCache ? "cache" : "variants.json", (System.nanoTime() - startTime) / 1_000_000);
+        return problems;
+    }
+
+    /**
+     * Returns the hash of the variants.json file at the given path, or null if it can't be read.
+     */
+    private static byte[] hashVariantsJSON(Path jsonPath) {
+        try {
+            return MineshaftVariantsCache.hash(Files.readAllBytes(jsonPath));
+        } catch (IOException e) {
+            BetterMineshafts.LOGGER.warn("Unable to read Better Mineshafts variants.json file to check the variants cache: {}", e.toString());
+            return null;
         }
     }
 }
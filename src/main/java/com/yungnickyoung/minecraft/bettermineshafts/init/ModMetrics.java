@@ -0,0 +1,30 @@
+package com.yungnickyoung.minecraft.bettermineshafts.init;
+
+import com.yungnickyoung.minecraft.bettermineshafts.BetterMineshafts;
+import com.yungnickyoung.minecraft.bettermineshafts.config.ConfigSnapshot;
+import com.yungnickyoung.minecraft.bettermineshafts.world.generator.MineshaftMetrics;
+import net.minecraftforge.common.MinecraftForge;
+import net.minecraftforge.event.TickEvent;
+
+public class ModMetrics {
+    private static long lastLogTime = System.nanoTime();
+
+    public static void init() {
+        // Periodically dump metrics to the log, if enabled
+        MinecraftForge.EVENT_BUS.addListener(ModMetrics::onServerTick);
+    }
+
+    private static void onServerTick(TickEvent.ServerTickEvent event) {
+        if (event.phase != TickEvent.Phase.END) return;
+
+        int interval = ConfigSnapshot.get().metricsLogInterval;
+        if (interval <= 0) return;
+
+        long now = System.nanoTime();
+        if (now - lastLogTime >= interval * 1_000_000_000L) {
+            lastLogTime = now;
+            BetterMineshafts.LOGGER.info("Better Mineshafts generation metrics:");
+            MineshaftMetrics.report().forEach(line -> BetterMineshafts.LOGGER.info("  {}", line));
+        }
+    }
+}
@@ -1,21 +1,22 @@
 package com.yungnickyoung.minecraft.bettermineshafts.world;
 
 import com.mojang.serialization.Codec;
-import com.yungnickyoung.minecraft.bettermineshafts.BetterMineshafts;
-import com.yungnickyoung.minecraft.bettermineshafts.config.Configuration;
+import com.yungnickyoung.minecraft.bettermineshafts.config.ConfigSnapshot;
+import com.yungnickyoung.minecraft.bettermineshafts.world.generator.MineshaftLayoutEngine;
+import com.yungnickyoung.minecraft.bettermineshafts.world.generator.MineshaftMetrics;
+import com.yungnickyoung.minecraft.bettermineshafts.world.generator.MineshaftPieceList;
 import com.yungnickyoung.minecraft.bettermineshafts.world.generator.MineshaftVariantSettings;
 import com.yungnickyoung.minecraft.bettermineshafts.world.generator.MineshaftVariants;
+import com.yungnickyoung.minecraft.bettermineshafts.world.generator.jfr.MineshaftEvents;
 import com.yungnickyoung.minecraft.bettermineshafts.world.generator.pieces.MineshaftPiece;
 import com.yungnickyoung.minecraft.bettermineshafts.world.generator.pieces.VerticalEntrance;
 import mcp.MethodsReturnNonnullByDefault;
 import net.minecraft.util.Direction;
-import net.minecraft.util.RegistryKey;
 import net.minecraft.util.SharedSeedRandom;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.math.ChunkPos;
 import net.minecraft.util.math.MutableBoundingBox;
 import net.minecraft.util.registry.DynamicRegistries;
-import net.minecraft.util.registry.Registry;
 import net.minecraft.world.biome.Biome;
 import net.minecraft.world.biome.provider.BiomeProvider;
 import net.minecraft.world.gen.ChunkGenerator;
@@ -24,10 +25,9 @@ import net.minecraft.world.gen.feature.NoFeatureConfig;
 import net.minecraft.world.gen.feature.structure.Structure;
 import net.minecraft.world.gen.feature.structure.StructureStart;
 import net.minecraft.world.gen.feature.template.TemplateManager;
-import net.minecraftforge.common.BiomeDictionary;
 
 import javax.annotation.ParametersAreNonnullByDefault;
-import java.util.List;
+import java.util.Random;
 
 @MethodsReturnNonnullByDefault
 public class BetterMineshaftStructure extends Structure<NoFeatureConfig> {
@@ -44,7 +44,12 @@ public class BetterMineshaftStructure extends Structure<NoFeatureConfig> {
     @Override
     protected boolean func_230363_a_(ChunkGenerator chunkGenerator, BiomeProvider biomeProvider, long seed, SharedSeedRandom random, int x, int z, Biome biome, ChunkPos chunkPos, NoFeatureConfig config) {
         random.setLargeFeatureSeed(seed, x, z);
-        return random.nextDouble() < Configuration.mineshaftSpawnRate.get();
+        MineshaftMetrics.startsAttempted.increment();
+        boolean shouldStart = random.nextDouble() < ConfigSnapshot.get().mineshaftSpawnRate;
+        if (shouldStart) {
+            MineshaftMetrics.startsAccepted.increment();
+        }
+        return shouldStart;
     }
 
     /**
@@ -80,6 +85,35 @@ public class BetterMineshaftStructure extends Structure<NoFeatureConfig> {
         @Override
         @ParametersAreNonnullByDefault
         public void func_230364_a_(DynamicRegistries p_230364_1_, ChunkGenerator chunkGenerator, TemplateManager structureManager, int chunkX, int chunkZ, Biome biome, NoFeatureConfig config) {
+            Object event = MineshaftEvents.beginLayout();
+
+            // Determine mineshaft variant based on biome.
+            // All pieces share these settings, so the whole mineshaft uses the same variants even if they're reloaded meanwhile.
+            MineshaftVariantSettings settings = MineshaftVariants.get().getVariantForBiome(biome);
+
+            // Build the entire mineshaft. Note that no blocks are actually placed yet.
+            MineshaftPieceList pieces = layout(chunkX, chunkZ, settings, this.rand);
+
+            // Optionally decide the surface entrance now, so its bounding box is already tight when references are made
+            if (ConfigSnapshot.get().estimateSurfaceAtStart) {
+                ((VerticalEntrance) pieces.get(0)).estimateTunnel(chunkGenerator);
+            }
+
+            this.components.addAll(pieces);
+
+            // Expand bounding box to encompass all children
+            this.recalculateStructureSize();
+
+            MineshaftEvents.endLayout(event, chunkX, chunkZ, settings, this.components.size());
+        }
+
+        /**
+         * Lays out a mineshaft of the given variant starting in the given chunk, returning all its pieces.
+         * The random passed in should be the start's random, which is seeded from the world seed and chunk position.
+         *
+         * This is everything the start does besides biome lookup, so it can also be driven without a world.
+         */
+        public static MineshaftPieceList layout(int chunkX, int chunkZ, MineshaftVariantSettings settings, Random random) {
             Direction direction = Direction.NORTH;
             // Separate rand is necessary bc for some reason otherwise r is 0 every time
             SharedSeedRandom rand = new SharedSeedRandom();
@@ -100,63 +134,21 @@ public class BetterMineshaftStructure extends Structure<NoFeatureConfig> {
                 case 3:
                     direction = Direction.WEST;
             }
-            int y = this.rand.nextInt(Configuration.maxY.get() - Configuration.minY.get() + 1) + Configuration.minY.get();
+            ConfigSnapshot config = ConfigSnapshot.get();
+            int y = random.nextInt(config.maxY - config.minY + 1) + config.minY;
             BlockPos.Mutable startingPos = new BlockPos.Mutable((chunkX << 4) + 2, y, (chunkZ << 4) + 2);
 
-            // Determine mineshaft variant based on biome
-            MineshaftVariantSettings settings = getSettingsForBiome(biome);
-
             // Entrypoint
             MineshaftPiece entryPoint = new VerticalEntrance(
                 -1,
-                this.rand,
+                random,
                 startingPos,
                 direction,
                 settings
             );
 
-            this.components.add(entryPoint);
-
             // Build room component. This also populates the children list, effectively building the entire mineshaft.
-            // Note that no blocks are actually placed yet.
-            entryPoint.buildComponent(entryPoint, this.components, this.rand);
-
-            // Expand bounding box to encompass all children
-            this.recalculateStructureSize();
-        }
-
-        private MineshaftVariantSettings getSettingsForBiome(Biome biome) {
-            RegistryKey<Biome> registryKey;
-
-            // Ensure biome registry name isn't null. This should never happen.
-            if (biome.getRegistryName() == null) {
-                BetterMineshafts.LOGGER.error("Found null registry name for biome {}. This shouldn't happen!", biome);
-                return MineshaftVariants.get().getDefault();
-            }
-
-            registryKey = RegistryKey.getOrCreateKey(Registry.BIOME_KEY, biome.getRegistryName());
-
-            // Search tag lists of variants top-down, short-circuiting if we find a matching tag list.
-            boolean found;
-            for (MineshaftVariantSettings variant : MineshaftVariants.get().getVariants()) {
-                for (List<BiomeDictionary.Type> tagList : variant.biomeTags) {
-                    found = true;
-                    for (BiomeDictionary.Type tag : tagList) {
-                        // Check tag
-                        if (!BiomeDictionary.hasType(registryKey, tag)) {
-                            found = false;
-                            break;
-                        }
-                    }
-
-                    if (found) {
-                        return variant;
-                    }
-                }
-            }
-
-            // No match --> return default
-            return MineshaftVariants.get().getDefault();
+            return MineshaftLayoutEngine.layout(entryPoint, random);
         }
     }
 }
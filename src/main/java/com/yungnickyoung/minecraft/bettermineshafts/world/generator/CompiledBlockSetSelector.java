@@ -0,0 +1,124 @@
+package com.yungnickyoung.minecraft.bettermineshafts.world.generator;
+
+import com.yungnickyoung.minecraft.yungsapi.world.BlockSetSelector;
+import net.minecraft.block.BlockState;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.UnaryOperator;
+
+/**
+ * Immutable, precomputed version of a {@link BlockSetSelector}.
+ *
+ * BlockSetSelector.get walks its entry map for every block, boxing and summing probabilities as it goes.
+ * This class computes the probability ranges once and splits [0, 1) into equal buckets.
+ * Most buckets lie entirely within one range, so a draw is usually a single array lookup.
+ * Only rolls in buckets containing the edge of a range fall back to checking the ranges.
+ *
+ * Results are identical to BlockSetSelector.get for the same random: it consumes the same single nextFloat,
+ * and the ranges are summed with the same float arithmetic in the same (map iteration) order.
+ * Because of this, a compiled selector must not outlive changes to the selector it was compiled from.
+ */
+public final class CompiledBlockSetSelector {
+    private static final int BUCKETS = 256;
+    private static final int AMBIGUOUS = -1;
+
+    /** Range of rolls for each entry, as [lower, upper) */
+    private final float[] lower, upper;
+    /** State for each entry, followed by the default state */
+    private final BlockState[] states;
+    /** Index into states for each bucket, or AMBIGUOUS if the bucket contains the edge of a range */
+    private final int[] buckets;
+
+    private CompiledBlockSetSelector(float[] lower, float[] upper, BlockState[] states, int[] buckets) {
+        this.lower = lower;
+        this.upper = upper;
+        this.states = states;
+        this.buckets = buckets;
+    }
+
+    public static CompiledBlockSetSelector compile(BlockSetSelector selector) {
+        Map<BlockState, Float> entries = selector.getEntries();
+        BlockState[] entryStates = new BlockState[entries.size()];
+        float[] chances = new float[entries.size()];
+        int i = 0;
+        for (Map.Entry<BlockState, Float> entry : entries.entrySet()) {
+            entryStates[i] = entry.getKey();
+            chances[i] = entry.getValue();
+            i++;
+        }
+        return compile(entryStates, chances, selector.getDefaultBlockState());
+    }
+
+    /**
+     * Compiles a selector from its entries, which must be given in the iteration order of the original selector's map.
+     */
+    public static CompiledBlockSetSelector compile(BlockState[] entryStates, float[] chances, BlockState defaultState) {
+        int n = entryStates.length;
+        float[] lower = new float[n];
+        float[] upper = new float[n];
+        BlockState[] states = Arrays.copyOf(entryStates, n + 1);
+
+        // Same arithmetic as BlockSetSelector.get
+        float current = 0;
+        for (int i = 0; i < n; i++) {
+            lower[i] = current;
+            upper[i] = current + chances[i];
+            current += chances[i];
+        }
+        states[n] = defaultState;
+
+        int[] buckets = new int[BUCKETS];
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            float start = bucket / (float) BUCKETS;
+            float end = (bucket + 1) / (float) BUCKETS;
+            boolean ambiguous = false;
+            for (int j = 0; j < n; j++) {
+                if ((lower[j] > start && lower[j] < end) || (upper[j] > start && upper[j] < end)) {
+                    ambiguous = true;
+                    break;
+                }
+            }
+            buckets[bucket] = ambiguous ? AMBIGUOUS : search(lower, upper, start);
+        }
+
+        return new CompiledBlockSetSelector(lower, upper, states, buckets);
+    }
+
+    /**
+     * Returns the index of the state the given roll selects. Mirrors the loop in BlockSetSelector.get.
+     */
+    private static int search(float[] lower, float[] upper, float roll) {
+        for (int i = 0; i < lower.length; i++) {
+            if (lower[i] <= roll && roll < upper[i]) {
+                return i;
+            }
+        }
+        return lower.length;
+    }
+
+    /**
+     * Selects a block, consuming exactly one random.nextFloat.
+     */
+    public BlockState get(Random random) {
+        float roll = random.nextFloat();
+        int index = buckets[(int) (roll * BUCKETS)];
+        if (index == AMBIGUOUS) {
+            index = search(lower, upper, roll);
+        }
+        return states[index];
+    }
+
+    /**
+     * Returns a selector with the same probabilities, but with each state transformed by the given function.
+     * Useful for e.g. rotating every state ahead of time.
+     */
+    public CompiledBlockSetSelector map(UnaryOperator<BlockState> function) {
+        BlockState[] mapped = new BlockState[states.length];
+        for (int i = 0; i < states.length; i++) {
+            mapped[i] = function.apply(states[i]);
+        }
+        return new CompiledBlockSetSelector(lower, upper, mapped, buckets);
+    }
+}
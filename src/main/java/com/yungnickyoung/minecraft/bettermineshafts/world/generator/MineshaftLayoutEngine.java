@@ -0,0 +1,162 @@
+package com.yungnickyoung.minecraft.bettermineshafts.world.generator;
+
+import com.yungnickyoung.minecraft.bettermineshafts.BetterMineshafts;
+import com.yungnickyoung.minecraft.bettermineshafts.config.ConfigSnapshot;
+import com.yungnickyoung.minecraft.bettermineshafts.world.generator.pieces.MineshaftPiece;
+import net.minecraft.world.gen.feature.structure.StructurePiece;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Builds the piece layout of a single mineshaft using an explicit worklist instead of recursion.
+ *
+ * Pieces never call a child's buildComponent directly. Instead, expanding a child and any work a piece
+ * still has to do after adding that child are scheduled as tasks. Tasks scheduled while running a task
+ * are run before anything that was already pending, in the order they were scheduled.
+ * This is the same depth-first order the old recursive buildComponent chains ran in,
+ * so random numbers are consumed in the same order and existing seeds keep their layouts.
+ *
+ * The engine also enforces a per-mineshaft piece budget and an optional time budget, checked before each piece is added.
+ * Once either is exhausted, no more pieces are added, and the remaining tasks simply finish up.
+ * The piece budget is deterministic. The time budget is not, so it is off by default.
+ *
+ * Each task belongs to the piece whose buildComponent scheduled it, and the time spent running it is
+ * recorded in that piece type's {@link MineshaftMetrics}.
+ */
+public class MineshaftLayoutEngine {
+    private final MineshaftPieceList pieces = new MineshaftPieceList(this);
+    private final Deque<Task> worklist = new ArrayDeque<>();
+    private final List<Task> scheduled = new ArrayList<>();
+    private MineshaftPiece currentPiece;
+    private final int maxPieces;
+    private final long deadline;
+    private boolean exhausted = false;
+
+    private MineshaftLayoutEngine(int maxPieces, long timeBudgetMillis) {
+        this.maxPieces = maxPieces;
+        this.deadline = timeBudgetMillis > 0 ? System.nanoTime() + timeBudgetMillis * 1_000_000L : Long.MAX_VALUE;
+    }
+
+    /**
+     * Lays out an entire mineshaft starting from its entry point.
+     * Note that no blocks are actually placed yet.
+     * @return The list of all pieces in the mineshaft, with the entry point first
+     */
+    public static MineshaftPieceList layout(MineshaftPiece entryPoint, Random random) {
+        ConfigSnapshot config = ConfigSnapshot.get();
+        MineshaftLayoutEngine engine = new MineshaftLayoutEngine(config.maxPiecesPerMineshaft, config.layoutTimeBudget);
+        MineshaftPieceList pieces = engine.pieces;
+        pieces.add(entryPoint);
+        entryPoint.getMetrics().laidOut.increment();
+        engine.run(new Task(entryPoint, () -> entryPoint.buildComponent(entryPoint, pieces, random)));
+        return pieces;
+    }
+
+    /**
+     * Adds a new piece to the list and schedules the building of its own components.
+     */
+    public static void expand(StructurePiece structurePiece, List<StructurePiece> list, Random random, MineshaftPiece newPiece) {
+        list.add(newPiece);
+        newPiece.getMetrics().laidOut.increment();
+        Runnable task = () -> newPiece.buildComponent(structurePiece, list, random);
+        MineshaftLayoutEngine engine = getEngine(list);
+        if (engine == null) {
+            task.run();
+        } else {
+            engine.scheduled.add(new Task(newPiece, task));
+        }
+    }
+
+    /**
+     * Schedules a task to run once everything scheduled before it by the current task has been fully built.
+     * If the list isn't being laid out by an engine, the task is simply run immediately.
+     */
+    public static void schedule(List<StructurePiece> list, Runnable task) {
+        MineshaftLayoutEngine engine = getEngine(list);
+        if (engine == null) {
+            task.run();
+        } else {
+            engine.scheduled.add(new Task(engine.currentPiece, task));
+        }
+    }
+
+    /**
+     * Runs each step once all components built by the previous step have been fully built.
+     */
+    public static void sequence(List<StructurePiece> list, Runnable... steps) {
+        sequence(list, steps, 0);
+    }
+
+    /**
+     * Returns false if the mineshaft being laid out has exhausted its piece or time budget.
+     * Must be checked before adding each piece, so that the piece budget is never exceeded.
+     */
+    public static boolean canAddPiece(List<StructurePiece> list) {
+        MineshaftLayoutEngine engine = getEngine(list);
+        if (engine == null) {
+            return true;
+        }
+        if (!engine.exhausted) {
+            engine.checkBudgets();
+        }
+        return !engine.exhausted;
+    }
+
+    private static void sequence(List<StructurePiece> list, Runnable[] steps, int i) {
+        steps[i].run();
+        if (i + 1 < steps.length) {
+            schedule(list, () -> sequence(list, steps, i + 1));
+        }
+    }
+
+    private static MineshaftLayoutEngine getEngine(List<StructurePiece> list) {
+        return list instanceof MineshaftPieceList ? ((MineshaftPieceList) list).getLayoutEngine() : null;
+    }
+
+    private void run(Task initialTask) {
+        worklist.push(initialTask);
+        while (!worklist.isEmpty()) {
+            Task task = worklist.pop();
+            currentPiece = task.piece;
+            long start = System.nanoTime();
+            task.action.run();
+            task.piece.getMetrics().buildNanos.add(System.nanoTime() - start);
+
+            // Push newly scheduled tasks in reverse so that the first one scheduled runs next
+            for (int i = scheduled.size() - 1; i >= 0; i--) {
+                worklist.push(scheduled.get(i));
+            }
+            scheduled.clear();
+        }
+    }
+
+    private void checkBudgets() {
+        StructurePiece entryPoint = pieces.get(0);
+        if (pieces.size() >= maxPieces) {
+            exhausted = true;
+            BetterMineshafts.LOGGER.warn("Mineshaft at ({}, {}) reached the limit of {} pieces. Remaining branches will be cut short.",
+                entryPoint.getBoundingBox().minX, entryPoint.getBoundingBox().minZ, maxPieces);
+        } else if (System.nanoTime() > deadline) {
+            exhausted = true;
+            BetterMineshafts.LOGGER.warn("Mineshaft at ({}, {}) ran out of layout time with {} pieces. Remaining branches will be cut short.",
+                entryPoint.getBoundingBox().minX, entryPoint.getBoundingBox().minZ, pieces.size());
+        }
+    }
+
+    /**
+     * A unit of work, along with the piece it is building.
+     */
+    private static final class Task {
+        private final MineshaftPiece piece;
+        private final Runnable action;
+
+        private Task(MineshaftPiece piece, Runnable action) {
+            this.piece = piece;
+            this.action = action;
+        }
+    }
+}
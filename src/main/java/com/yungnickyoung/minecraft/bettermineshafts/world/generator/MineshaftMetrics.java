@@ -0,0 +1,117 @@
+package com.yungnickyoung.minecraft.bettermineshafts.world.generator;
+
+import com.yungnickyoung.minecraft.bettermineshafts.world.generator.pieces.MineshaftPiece;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Always-on counters and timers for mineshaft generation.
+ *
+ * Worldgen runs on many threads at once, so all counters are LongAdders, which stay cheap under contention.
+ * Per-piece-type metrics are looked up once per piece and kept on the piece itself, so recording them is just an increment.
+ *
+ * Counts accumulate from server start (or the last reset) and can be read with /bettermineshafts metrics.
+ */
+public final class MineshaftMetrics {
+    /** Chunks checked for whether a mineshaft should start there */
+    public static final LongAdder startsAttempted = new LongAdder();
+    /** Chunks a mineshaft started in */
+    public static final LongAdder startsAccepted = new LongAdder();
+    /** Vertical entrances that found suitable terrain for a surface tunnel */
+    public static final LongAdder surfaceEntrances = new LongAdder();
+
+    private static final Map<Class<?>, PieceMetrics> PIECES = new ConcurrentHashMap<>();
+
+    private MineshaftMetrics() {}
+
+    /**
+     * Metrics for a single type of piece.
+     */
+    public static final class PieceMetrics {
+        private final String name;
+
+        /** Pieces of this type added to a mineshaft's layout */
+        public final LongAdder laidOut = new LongAdder();
+        /** Pieces of this type not added because they intersected an existing piece */
+        public final LongAdder rejected = new LongAdder();
+        /** Nanoseconds spent in this type's buildComponent */
+        public final LongAdder buildNanos = new LongAdder();
+        /** Times a piece of this type was placed into a chunk */
+        public final LongAdder placements = new LongAdder();
+        /** Placements skipped because the piece is in an ocean */
+        public final LongAdder skippedOcean = new LongAdder();
+        /** Placements skipped because there is liquid in the piece's bounding box */
+        public final LongAdder skippedLiquid = new LongAdder();
+        /** Nanoseconds spent placing this type's blocks, i.e. in func_230383_a_ */
+        public final LongAdder placeNanos = new LongAdder();
+
+        private PieceMetrics(String name) {
+            this.name = name;
+        }
+
+        private void reset() {
+            laidOut.reset();
+            rejected.reset();
+            buildNanos.reset();
+            placements.reset();
+            skippedOcean.reset();
+            skippedLiquid.reset();
+            placeNanos.reset();
+        }
+    }
+
+    /**
+     * Returns the metrics for the given type of piece.
+     */
+    public static PieceMetrics forPiece(Class<? extends MineshaftPiece> pieceClass) {
+        // Check with get first, since computeIfAbsent always locks on Java 8
+        PieceMetrics metrics = PIECES.get(pieceClass);
+        return metrics != null ? metrics : PIECES.computeIfAbsent(pieceClass, c -> new PieceMetrics(c.getSimpleName()));
+    }
+
+    /**
+     * Resets all counters to zero.
+     * Counts recorded concurrently with a reset may or may not be lost.
+     */
+    public static void reset() {
+        startsAttempted.reset();
+        startsAccepted.reset();
+        surfaceEntrances.reset();
+        PIECES.values().forEach(PieceMetrics::reset);
+    }
+
+    /**
+     * Returns a human-readable summary of all metrics, one entry per line.
+     */
+    public static List<String> report() {
+        List<String> lines = new ArrayList<>();
+        long attempted = startsAttempted.sum();
+        long accepted = startsAccepted.sum();
+        lines.add(String.format("Starts: %d attempted, %d accepted (%.2f%%), %d with surface entrances",
+            attempted, accepted, attempted == 0 ? 0 : accepted * 100.0 / attempted, surfaceEntrances.sum()));
+
+        PIECES.values().stream()
+            .sorted((a, b) -> a.name.compareTo(b.name))
+            .forEach(piece -> {
+                long laidOut = piece.laidOut.sum();
+                long placements = piece.placements.sum();
+                lines.add(String.format("%s: %d laid out, %d rejected, %.1f ms building (%.1f us avg); " +
+                        "%d placed, %d skipped (ocean), %d skipped (liquid), %.1f ms placing (%.1f us avg)",
+                    piece.name,
+                    laidOut,
+                    piece.rejected.sum(),
+                    piece.buildNanos.sum() / 1e6,
+                    laidOut == 0 ? 0 : piece.buildNanos.sum() / 1e3 / laidOut,
+                    placements,
+                    piece.skippedOcean.sum(),
+                    piece.skippedLiquid.sum(),
+                    piece.placeNanos.sum() / 1e6,
+                    placements == 0 ? 0 : piece.placeNanos.sum() / 1e3 / placements));
+            });
+        return lines;
+    }
+}
@@ -0,0 +1,111 @@
+package com.yungnickyoung.minecraft.bettermineshafts.world.generator;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.util.math.MutableBoundingBox;
+import net.minecraft.world.gen.feature.structure.StructurePiece;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Piece list used while laying out a mineshaft.
+ * In addition to storing the pieces in insertion order, it maintains a coarse grid index of
+ * the pieces keyed by the 16x16 column each piece's bounding box covers.
+ * This lets overlap checks during layout only test nearby pieces instead of scanning the whole list.
+ *
+ * Only appending pieces is tracked by the index, which is all layout ever does.
+ * Once layout is finished, the pieces should be copied into the structure start's component list.
+ */
+public class MineshaftPieceList extends ArrayList<StructurePiece> {
+    private final Long2ObjectMap<List<StructurePiece>> cells = new Long2ObjectOpenHashMap<>();
+    private final MineshaftLayoutEngine layoutEngine;
+
+    public MineshaftPieceList() {
+        this(null);
+    }
+
+    MineshaftPieceList(MineshaftLayoutEngine layoutEngine) {
+        this.layoutEngine = layoutEngine;
+    }
+
+    @Override
+    public boolean add(StructurePiece piece) {
+        super.add(piece);
+        index(piece);
+        return true;
+    }
+
+    @Override
+    public void add(int i, StructurePiece piece) {
+        super.add(i, piece);
+        index(piece);
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends StructurePiece> pieces) {
+        pieces.forEach(this::add);
+        return !pieces.isEmpty();
+    }
+
+    @Override
+    public void clear() {
+        super.clear();
+        cells.clear();
+    }
+
+    /**
+     * Returns a piece in the list whose bounding box intersects the given box, or null if there is none.
+     * Equivalent to {@link StructurePiece#findIntersecting}, but only checks the pieces sharing a grid cell with the box.
+     */
+    public StructurePiece findIntersecting(MutableBoundingBox box) {
+        for (int cellX = box.minX >> 4; cellX <= box.maxX >> 4; cellX++) {
+            for (int cellZ = box.minZ >> 4; cellZ <= box.maxZ >> 4; cellZ++) {
+                List<StructurePiece> cell = cells.get(ChunkPos.asLong(cellX, cellZ));
+                if (cell == null) continue;
+                for (StructurePiece piece : cell) {
+                    if (piece.getBoundingBox() != null && piece.getBoundingBox().intersectsWith(box)) {
+                        return piece;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns a piece in the list whose bounding box intersects the given box, or null if there is none.
+     * Uses the grid index if the list is a {@link MineshaftPieceList}, and falls back to vanilla's linear scan otherwise.
+     */
+    public static StructurePiece findIntersecting(List<StructurePiece> list, MutableBoundingBox box) {
+        if (list instanceof MineshaftPieceList) {
+            return ((MineshaftPieceList) list).findIntersecting(box);
+        }
+        return StructurePiece.findIntersecting(list, box);
+    }
+
+    /**
+     * Returns the engine laying out the pieces in this list, or null if the list isn't managed by one.
+     */
+    MineshaftLayoutEngine getLayoutEngine() {
+        return layoutEngine;
+    }
+
+    private void index(StructurePiece piece) {
+        MutableBoundingBox box = piece.getBoundingBox();
+        if (box == null) return;
+        for (int cellX = box.minX >> 4; cellX <= box.maxX >> 4; cellX++) {
+            for (int cellZ = box.minZ >> 4; cellZ <= box.maxZ >> 4; cellZ++) {
+                long key = ChunkPos.asLong(cellX, cellZ);
+                List<StructurePiece> cell = cells.get(key);
+                if (cell == null) {
+                    cell = new ArrayList<>();
+                    cells.put(key, cell);
+                }
+                cell.add(piece);
+            }
+        }
+    }
+}
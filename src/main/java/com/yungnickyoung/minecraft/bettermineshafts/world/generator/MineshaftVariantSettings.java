@@ -1,14 +1,30 @@
 package com.yungnickyoung.minecraft.bettermineshafts.world.generator;
 
+import com.yungnickyoung.minecraft.bettermineshafts.world.generator.pieces.VoxelProgram;
 import com.yungnickyoung.minecraft.yungsapi.world.BlockSetSelector;
 import net.minecraft.block.BlockState;
 import net.minecraftforge.common.BiomeDictionary;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Settings for a single mineshaft variant.
+ *
+ * The fields are public so that Gson and {@link MineshaftVariantsCache} can fill them in directly.
+ * They, and the {@link BlockSetSelector}s they hold, must only be written before the settings are published
+ * through {@link MineshaftVariants#publish}. Once published, the settings are shared by worldgen threads without locking:
+ * the setters throw, and nothing may write the fields or call addBlock/setDefaultBlockState on the selectors.
+ * Worldgen only reads the compiled selectors, which are immutable.
+ */
 public class MineshaftVariantSettings {
     public MineshaftVariantSettings() {}
 
+    /** Unique ID saved with each piece, so pieces keep their variant if variants.json is reordered **/
+    public String id;
     public List<List<BiomeDictionary.Type>> biomeTags;
     public BlockSetSelector mainSelector;
     public BlockSetSelector floorSelector;
@@ -30,112 +46,245 @@ public class MineshaftVariantSettings {
     public boolean flammableLegs;
     public float replacementRate;
 
+    /** Fill programs compiled for this variant, keyed by piece and indexed by orientation. Never saved to JSON. **/
+    public final transient Map<String, VoxelProgram[]> voxelPrograms = new ConcurrentHashMap<>();
+
+    /** Compiled versions of the selectors. Built lazily, since Gson sets the selectors without going through the setters. **/
+    private transient CompiledBlockSetSelector compiledMainSelector;
+    private transient CompiledBlockSetSelector compiledFloorSelector;
+    private transient CompiledBlockSetSelector compiledBrickSelector;
+    private transient CompiledBlockSetSelector compiledLegSelector;
+
+    public CompiledBlockSetSelector getCompiledMainSelector() {
+        if (compiledMainSelector == null) compiledMainSelector = CompiledBlockSetSelector.compile(mainSelector);
+        return compiledMainSelector;
+    }
+
+    public CompiledBlockSetSelector getCompiledFloorSelector() {
+        if (compiledFloorSelector == null) compiledFloorSelector = CompiledBlockSetSelector.compile(floorSelector);
+        return compiledFloorSelector;
+    }
+
+    public CompiledBlockSetSelector getCompiledBrickSelector() {
+        if (compiledBrickSelector == null) compiledBrickSelector = CompiledBlockSetSelector.compile(brickSelector);
+        return compiledBrickSelector;
+    }
+
+    public CompiledBlockSetSelector getCompiledLegSelector() {
+        if (compiledLegSelector == null) compiledLegSelector = CompiledBlockSetSelector.compile(legSelector);
+        return compiledLegSelector;
+    }
+
+    /**
+     * Sets already compiled versions of the selectors, e.g. when loading from the variants cache.
+     * The selectors themselves must be set as well, and must be equivalent.
+     */
+    void setCompiledSelectors(CompiledBlockSetSelector main, CompiledBlockSetSelector floor, CompiledBlockSetSelector brick, CompiledBlockSetSelector leg) {
+        checkNotFrozen();
+        compiledMainSelector = main;
+        compiledFloorSelector = floor;
+        compiledBrickSelector = brick;
+        compiledLegSelector = leg;
+    }
+
+    /** Set once these settings are published for worldgen. From then on, they may no longer be changed. **/
+    private transient boolean frozen;
+
+    /**
+     * Compiles all selectors ahead of time and prevents any further changes through the setters,
+     * so that worldgen threads can share these settings without locking.
+     */
+    void freeze() {
+        getCompiledMainSelector();
+        getCompiledFloorSelector();
+        getCompiledBrickSelector();
+        getCompiledLegSelector();
+        if (biomeTags != null) {
+            List<List<BiomeDictionary.Type>> tags = new ArrayList<>(biomeTags.size());
+            biomeTags.forEach(tagList -> tags.add(Collections.unmodifiableList(new ArrayList<>(tagList))));
+            biomeTags = Collections.unmodifiableList(tags);
+        }
+        frozen = true;
+    }
+
+    /**
+     * Adds a description of each setting that is missing or out of range to the given list.
+     * @param name Name of this variant to use in descriptions
+     * @param isDefault Whether this is the default variant, which doesn't need biome tags
+     */
+    void validate(String name, boolean isDefault, List<String> problems) {
+        if (!isDefault && biomeTags == null) problems.add(name + " is missing biomeTags");
+        if (mainSelector == null) problems.add(name + " is missing mainSelector");
+        if (floorSelector == null) problems.add(name + " is missing floorSelector");
+        if (brickSelector == null) problems.add(name + " is missing brickSelector");
+        if (legSelector == null) problems.add(name + " is missing legSelector");
+        if (mainBlock == null) problems.add(name + " is missing mainBlock");
+        if (supportBlock == null) problems.add(name + " is missing supportBlock");
+        if (slabBlock == null) problems.add(name + " is missing slabBlock");
+        if (gravelBlock == null) problems.add(name + " is missing gravelBlock");
+        if (stoneWallBlock == null) problems.add(name + " is missing stoneWallBlock");
+        if (stoneSlabBlock == null) problems.add(name + " is missing stoneSlabBlock");
+        if (trapdoorBlock == null) problems.add(name + " is missing trapdoorBlock");
+        validateChance(name, "vineChance", vineChance, problems);
+        validateChance(name, "snowChance", snowChance, problems);
+        validateChance(name, "cactusChance", cactusChance, problems);
+        validateChance(name, "deadBushChance", deadBushChance, problems);
+        validateChance(name, "mushroomChance", mushroomChance, problems);
+        validateChance(name, "replacementRate", replacementRate, problems);
+    }
+
+    private static void validateChance(String name, String setting, float chance, List<String> problems) {
+        if (!(chance >= 0 && chance <= 1)) {
+            problems.add(name + " has " + setting + " " + chance + ", which should be between 0 and 1");
+        }
+    }
+
+    private void checkNotFrozen() {
+        if (frozen) {
+            throw new IllegalStateException("Mineshaft variant " + id + " can't be changed once it has been published");
+        }
+    }
+
     /** Builder-style setters to make it more obvious which settings are being set when creating a new object **/
 
+    public MineshaftVariantSettings setId(String id) {
+        checkNotFrozen();
+        this.id = id;
+        return this;
+    }
+
     public MineshaftVariantSettings setBiomeTags(List<List<BiomeDictionary.Type>> biomeTags) {
+        checkNotFrozen();
         this.biomeTags = biomeTags;
         return this;
     }
 
     public MineshaftVariantSettings setMainSelector(BlockSetSelector mainSelector) {
+        checkNotFrozen();
         this.mainSelector = mainSelector;
         if (this.mainBlock != null) this.mainSelector.setDefaultBlockState(mainBlock);
+        this.compiledMainSelector = null;
         return this;
     }
 
     public MineshaftVariantSettings setFloorSelector(BlockSetSelector floorSelector) {
+        checkNotFrozen();
         this.floorSelector = floorSelector;
         if (this.mainBlock != null) this.floorSelector.setDefaultBlockState(mainBlock);
+        this.compiledFloorSelector = null;
         return this;
     }
 
     public MineshaftVariantSettings setBrickSelector(BlockSetSelector brickSelector) {
+        checkNotFrozen();
         this.brickSelector = brickSelector;
         if (this.mainBlock != null) this.brickSelector.setDefaultBlockState(mainBlock);
+        this.compiledBrickSelector = null;
         return this;
     }
 
     public MineshaftVariantSettings setLegSelector(BlockSetSelector legSelector) {
+        checkNotFrozen();
         this.legSelector = legSelector;
         if (this.mainBlock != null) this.legSelector.setDefaultBlockState(mainBlock);
+        this.compiledLegSelector = null;
         return this;
     }
 
     public MineshaftVariantSettings setMainBlock(BlockState mainBlock) {
+        checkNotFrozen();
         this.mainBlock = mainBlock;
         if (this.mainSelector != null) this.mainSelector.setDefaultBlockState(mainBlock);
         if (this.floorSelector != null) this.floorSelector.setDefaultBlockState(mainBlock);
         if (this.brickSelector != null) this.brickSelector.setDefaultBlockState(mainBlock);
         if (this.legSelector != null) this.legSelector.setDefaultBlockState(mainBlock);
+        this.compiledMainSelector = null;
+        this.compiledFloorSelector = null;
+        this.compiledBrickSelector = null;
+        this.compiledLegSelector = null;
         return this;
     }
 
     public MineshaftVariantSettings setSupportBlock(BlockState supportBlock) {
+        checkNotFrozen();
         this.supportBlock = supportBlock;
         return this;
     }
 
     public MineshaftVariantSettings setSlabBlock(BlockState slabBlock) {
+        checkNotFrozen();
         this.slabBlock = slabBlock;
         return this;
     }
 
     public MineshaftVariantSettings setGravelBlock(BlockState gravelBlock) {
+        checkNotFrozen();
         this.gravelBlock = gravelBlock;
         return this;
     }
 
     public MineshaftVariantSettings setStoneWallBlock(BlockState stoneWallBlock) {
+        checkNotFrozen();
         this.stoneWallBlock = stoneWallBlock;
         return this;
     }
 
     public MineshaftVariantSettings setStoneSlabBlock(BlockState stoneSlabBlock) {
+        checkNotFrozen();
         this.stoneSlabBlock = stoneSlabBlock;
         return this;
     }
 
     public MineshaftVariantSettings setTrapdoorBlock(BlockState trapdoorBlock) {
+        checkNotFrozen();
         this.trapdoorBlock = trapdoorBlock;
         return this;
     }
 
     public MineshaftVariantSettings setVineChance(float vineChance) {
+        checkNotFrozen();
         this.vineChance = vineChance;
         return this;
     }
 
     public MineshaftVariantSettings setSnowChance(float snowChance) {
+        checkNotFrozen();
         this.snowChance = snowChance;
         return this;
     }
 
     public MineshaftVariantSettings setCactusChance(float cactusChance) {
+        checkNotFrozen();
         this.cactusChance = cactusChance;
         return this;
     }
 
     public MineshaftVariantSettings setDeadBushChance(float deadBushChance) {
+        checkNotFrozen();
         this.deadBushChance = deadBushChance;
         return this;
     }
 
     public MineshaftVariantSettings setMushroomChance(float mushroomChance) {
+        checkNotFrozen();
         this.mushroomChance = mushroomChance;
         return this;
     }
 
     public MineshaftVariantSettings setLegVariant(int legVariant) {
+        checkNotFrozen();
         this.legVariant = legVariant;
         return this;
     }
 
     public MineshaftVariantSettings setFlammableLegs(boolean flammableLegs) {
+        checkNotFrozen();
         this.flammableLegs = flammableLegs;
         return this;
     }
 
     public MineshaftVariantSettings setReplacementRate(float replacementRate) {
+        checkNotFrozen();
         this.replacementRate = replacementRate;
         return this;
     }
@@ -1,34 +1,90 @@
 package com.yungnickyoung.minecraft.bettermineshafts.world.generator;
 
 import com.google.common.collect.Lists;
+import com.yungnickyoung.minecraft.bettermineshafts.BetterMineshafts;
 import com.yungnickyoung.minecraft.yungsapi.world.BlockSetSelector;
 import net.minecraft.block.Blocks;
 import net.minecraft.block.RotatedPillarBlock;
 import net.minecraft.state.properties.BlockStateProperties;
 import net.minecraft.state.properties.SlabType;
 import net.minecraft.util.Direction;
+import net.minecraft.util.RegistryKey;
+import net.minecraft.util.registry.Registry;
+import net.minecraft.world.biome.Biome;
 import net.minecraftforge.common.BiomeDictionary;
+import net.minecraftforge.registries.ForgeRegistries;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
- * Singleton class holding list of all {@link MineshaftVariantSettings}.
- * The class is a singleton so that it may be synchronized with the JSON file as a single source of truth.
+ * Holds the list of all {@link MineshaftVariantSettings}, as loaded from the variants JSON file.
  * If no JSON exists, this class will be populated with the default values shown below
  * (and a JSON with the default values created)
+ *
+ * Worldgen threads read the current variants through {@link #get()} while the JSON may be reloaded at any time.
+ * To keep this safe without locking, a set of variants is never changed once published:
+ * loading the JSON builds an entirely new instance, which replaces the current one in a single atomic swap.
+ * Anything that needs consistent settings (e.g. a structure start and its pieces) should call get() once and hold on to the result.
  */
 public class MineshaftVariants {
 
-    /** Singleton stuff **/
+    /** Current variants **/
 
-    public static MineshaftVariants instance; // This technically shouldn't be public, but it is necessary for loading data from JSON
+    /** ID of the default variant. Reserved, so variants in the list may not use it **/
+    public static final String DEFAULT_ID = "default";
+
+    private static final AtomicReference<MineshaftVariants> current = new AtomicReference<>();
+
+    /**
+     * Returns the currently published variants, publishing the default variants if none have been published yet.
+     */
     public static MineshaftVariants get() {
-        if (instance == null) {
-            instance = new MineshaftVariants();
+        MineshaftVariants variants = current.get();
+        if (variants == null) {
+            MineshaftVariants defaults = createDefault();
+            defaults.prepare();
+            current.compareAndSet(null, defaults);
+            variants = current.get();
         }
-        return instance;
+        return variants;
+    }
+
+    /**
+     * Returns a new, unpublished instance holding the given variants.
+     */
+    static MineshaftVariants of(List<MineshaftVariantSettings> variants, MineshaftVariantSettings defaultVariant) {
+        return new MineshaftVariants(variants, defaultVariant);
+    }
+
+    /**
+     * Returns a new, unpublished instance holding the default variants.
+     */
+    public static MineshaftVariants createDefault() {
+        return new MineshaftVariants();
+    }
+
+    /**
+     * Prepares the given variants for worldgen and makes them the current variants.
+     * The variants must have passed {@link #validate()}, and may no longer be changed afterwards.
+     * Worldgen already in progress keeps using the variants it started with.
+     */
+    public static void publish(MineshaftVariants variants) {
+        variants.prepare();
+        current.set(variants);
+    }
+
+    private MineshaftVariants(List<MineshaftVariantSettings> variants, MineshaftVariantSettings defaultVariant) {
+        this.variants = variants;
+        this.defaultVariant = defaultVariant;
     }
 
     private MineshaftVariants() {
@@ -37,6 +93,7 @@ public class MineshaftVariants {
 
         // RED DESERT
         variants.add(new MineshaftVariantSettings()
+            .setId("red_desert")
             .setBiomeTags(new ArrayList<>(Arrays.asList(
                 new ArrayList<>(Arrays.asList(BiomeDictionary.Type.HOT, BiomeDictionary.Type.DRY, BiomeDictionary.Type.SANDY, BiomeDictionary.Type.RARE)),
                 new ArrayList<>(Arrays.asList(BiomeDictionary.Type.MESA, BiomeDictionary.Type.RARE)))))
@@ -87,6 +144,7 @@ public class MineshaftVariants {
 
         // ICE
         variants.add(new MineshaftVariantSettings()
+            .setId("ice")
             .setBiomeTags(new ArrayList<>(Arrays.asList(
                 new ArrayList<>(Arrays.asList(BiomeDictionary.Type.SNOWY, BiomeDictionary.Type.RARE)))))
             .setMainSelector(
@@ -123,6 +181,7 @@ public class MineshaftVariants {
 
         // MESA
         variants.add(new MineshaftVariantSettings()
+            .setId("mesa")
             .setBiomeTags(new ArrayList<>(Arrays.asList(
                 new ArrayList<>(Arrays.asList(BiomeDictionary.Type.MESA)))))
             .setMainSelector(
@@ -167,6 +226,7 @@ public class MineshaftVariants {
 
         // JUNGLE
         variants.add(new MineshaftVariantSettings()
+            .setId("jungle")
             .setBiomeTags(new ArrayList<>(Arrays.asList(
                 new ArrayList<>(Arrays.asList(BiomeDictionary.Type.JUNGLE)))))
             .setMainSelector(
@@ -211,6 +271,7 @@ public class MineshaftVariants {
 
         // SNOWY SPRUCE
         variants.add(new MineshaftVariantSettings()
+            .setId("snowy_spruce")
             .setBiomeTags(new ArrayList<>(Arrays.asList(
                 new ArrayList<>(Arrays.asList(BiomeDictionary.Type.SNOWY)))))
             .setMainSelector(
@@ -254,6 +315,7 @@ public class MineshaftVariants {
 
         // SPRUCE (NO SNOW)
         variants.add(new MineshaftVariantSettings()
+            .setId("spruce")
             .setBiomeTags(new ArrayList<>(Arrays.asList(
                 new ArrayList<>(Arrays.asList(BiomeDictionary.Type.COLD, BiomeDictionary.Type.CONIFEROUS, BiomeDictionary.Type.FOREST)))))
             .setMainSelector(
@@ -295,6 +357,7 @@ public class MineshaftVariants {
 
         // DESERT
         variants.add(new MineshaftVariantSettings()
+            .setId("desert")
             .setBiomeTags(new ArrayList<>(Arrays.asList(
                 new ArrayList<>(Arrays.asList(BiomeDictionary.Type.HOT, BiomeDictionary.Type.DRY, BiomeDictionary.Type.SANDY)))))
             .setMainSelector(
@@ -345,6 +408,7 @@ public class MineshaftVariants {
 
         // SAVANNA (ACACIA)
         variants.add(new MineshaftVariantSettings()
+            .setId("savanna")
             .setBiomeTags(new ArrayList<>(Arrays.asList(
                 new ArrayList<>(Arrays.asList(BiomeDictionary.Type.SAVANNA)))))
             .setMainSelector(
@@ -387,6 +451,7 @@ public class MineshaftVariants {
 
         // MUSHROOM
         variants.add(new MineshaftVariantSettings()
+            .setId("mushroom")
             .setBiomeTags(new ArrayList<>(Arrays.asList(
                 new ArrayList<>(Arrays.asList(BiomeDictionary.Type.MUSHROOM)))))
             .setMainSelector(
@@ -426,6 +491,7 @@ public class MineshaftVariants {
 
         // Set default for biomes that don't match any of the biome tag lists
         this.defaultVariant = new MineshaftVariantSettings()
+            .setId(DEFAULT_ID)
             .setBiomeTags(Lists.newArrayList()) // TODO - ensure this list can only be empty if this variant is named default
             .setMainSelector(
                 new BlockSetSelector()
@@ -469,6 +535,19 @@ public class MineshaftVariants {
     private List<MineshaftVariantSettings> variants;
     private MineshaftVariantSettings defaultVariant;
 
+    /**
+     * Cache of which variant each biome uses. Since the answer only depends on the biome and the variants
+     * in this instance, the cache lives and dies with the instance, so loading a new variants.json starts fresh.
+     * The map is copied on write so that lookups from worldgen threads never need to lock.
+     */
+    private transient volatile Map<Biome, MineshaftVariantSettings> biomeVariants;
+
+    /**
+     * Index of each variant by ID, used when loading pieces from NBT.
+     * Built when the variants are published, since Gson fills in the variants after the constructor has run.
+     */
+    private transient Map<String, MineshaftVariantSettings> variantsById;
+
     public List<MineshaftVariantSettings> getVariants() {
         return variants;
     }
@@ -476,4 +555,158 @@ public class MineshaftVariants {
     public MineshaftVariantSettings getDefault() {
         return defaultVariant;
     }
-}
\ No newline at end of file
+
+    /**
+     * Returns the variant with the given ID, or the default variant if no variant has that ID
+     * (e.g. because it was removed from variants.json).
+     */
+    public MineshaftVariantSettings getVariantById(String id) {
+        return variantsById.getOrDefault(id, getDefault());
+    }
+
+    /**
+     * Returns a description of each problem that would keep these variants from being used,
+     * e.g. missing settings or variant IDs that aren't unique.
+     * Variants should only be published if this returns an empty list.
+     */
+    public List<String> validate() {
+        List<String> problems = new ArrayList<>();
+        if (variants == null) {
+            problems.add("variants list is missing");
+        } else {
+            Set<String> ids = new HashSet<>();
+            for (int i = 0; i < variants.size(); i++) {
+                MineshaftVariantSettings variant = variants.get(i);
+                String name = "Variant " + (variant != null && variant.id != null ? "'" + variant.id + "'" : "at index " + i);
+                if (variant == null) {
+                    problems.add(name + " is empty");
+                    continue;
+                }
+                variant.validate(name, false, problems);
+
+                // Pieces are saved with their variant's ID, so IDs must be unique for saved pieces to keep their variant
+                String id = getIdOrFallback(variant, i);
+                if (DEFAULT_ID.equals(id)) {
+                    problems.add(name + " uses the id '" + DEFAULT_ID + "', which is reserved for the defaultVariant");
+                } else if (!ids.add(id)) {
+                    problems.add(name + " has the id '" + id + "', which is already used by an earlier variant");
+                }
+            }
+        }
+        if (defaultVariant == null) {
+            problems.add("defaultVariant is missing");
+        } else {
+            defaultVariant.validate("defaultVariant", true, problems);
+        }
+        return problems;
+    }
+
+    /**
+     * Indexes and freezes all variants, so that they can be shared by worldgen threads.
+     * Must only be called once, before the variants are published.
+     */
+    private void prepare() {
+        buildIdIndex();
+        variants = Collections.unmodifiableList(new ArrayList<>(variants));
+        variants.forEach(MineshaftVariantSettings::freeze);
+        defaultVariant.freeze();
+        buildBiomeCache();
+    }
+
+    /**
+     * Makes sure every variant has a unique ID and indexes the variants by ID.
+     * Variants from a variants.json written before IDs existed are given IDs based on their position in the list,
+     * which matches how their pieces were saved before.
+     */
+    private void buildIdIndex() {
+        Map<String, MineshaftVariantSettings> index = new HashMap<>();
+        defaultVariant.id = DEFAULT_ID;
+        index.put(DEFAULT_ID, defaultVariant);
+
+        for (int i = 0; i < variants.size(); i++) {
+            MineshaftVariantSettings variant = variants.get(i);
+            if (variant.id == null || variant.id.isEmpty()) {
+                variant.id = getIdOrFallback(variant, i);
+                BetterMineshafts.LOGGER.warn("Mineshaft variant at index {} in variants.json has no id. Using '{}' instead.", i, variant.id);
+                BetterMineshafts.LOGGER.warn("Give it an id so that mineshafts already in your world keep their variant if you reorder variants.json.");
+            }
+            // validate() rejects duplicate IDs, so this can only happen if variants were published without validating them
+            if (index.put(variant.id, variant) != null) {
+                throw new IllegalStateException("Duplicate mineshaft variant id '" + variant.id + "' at index " + i);
+            }
+        }
+
+        variantsById = index;
+    }
+
+    /**
+     * Returns the ID of the given variant, or the ID it is given based on its position in the list if it has none.
+     */
+    private static String getIdOrFallback(MineshaftVariantSettings variant, int index) {
+        return variant.id == null || variant.id.isEmpty() ? "variant_" + index : variant.id;
+    }
+
+    /**
+     * Returns the variant used for mineshafts in the given biome.
+     * Biomes are matched against each variant's tag lists top-down. If no variant matches, the default variant is used.
+     */
+    public MineshaftVariantSettings getVariantForBiome(Biome biome) {
+        Map<Biome, MineshaftVariantSettings> cache = biomeVariants;
+        MineshaftVariantSettings variant = cache == null ? null : cache.get(biome);
+        if (variant == null) {
+            variant = matchBiome(biome);
+            synchronized (this) {
+                Map<Biome, MineshaftVariantSettings> newCache = biomeVariants == null ? new IdentityHashMap<>() : new IdentityHashMap<>(biomeVariants);
+                newCache.put(biome, variant);
+                biomeVariants = newCache;
+            }
+        }
+        return variant;
+    }
+
+    /**
+     * Precomputes the variant for every registered biome.
+     * Biomes not known at this point (e.g. those added by datapacks) are resolved on first lookup instead.
+     */
+    private void buildBiomeCache() {
+        Map<Biome, MineshaftVariantSettings> newCache = new IdentityHashMap<>();
+        for (Biome biome : ForgeRegistries.BIOMES.getValues()) {
+            newCache.put(biome, matchBiome(biome));
+        }
+        synchronized (this) {
+            biomeVariants = newCache;
+        }
+    }
+
+    private MineshaftVariantSettings matchBiome(Biome biome) {
+        // Ensure biome registry name isn't null. This should never happen.
+        if (biome.getRegistryName() == null) {
+            BetterMineshafts.LOGGER.error("Found null registry name for biome {}. This shouldn't happen!", biome);
+            return getDefault();
+        }
+
+        RegistryKey<Biome> registryKey = RegistryKey.getOrCreateKey(Registry.BIOME_KEY, biome.getRegistryName());
+
+        // Search tag lists of variants top-down, short-circuiting if we find a matching tag list.
+        boolean found;
+        for (MineshaftVariantSettings variant : getVariants()) {
+            for (List<BiomeDictionary.Type> tagList : variant.biomeTags) {
+                found = true;
+                for (BiomeDictionary.Type tag : tagList) {
+                    // Check tag
+                    if (!BiomeDictionary.hasType(registryKey, tag)) {
+                        found = false;
+                        break;
+                    }
+                }
+
+                if (found) {
+                    return variant;
+                }
+            }
+        }
+
+        // No match --> return default
+        return getDefault();
+    }
+}
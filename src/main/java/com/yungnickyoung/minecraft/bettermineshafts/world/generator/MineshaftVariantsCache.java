@@ -0,0 +1,351 @@
+package com.yungnickyoung.minecraft.bettermineshafts.world.generator;
+
+import com.yungnickyoung.minecraft.bettermineshafts.BetterMineshafts;
+import com.yungnickyoung.minecraft.yungsapi.world.BlockSetSelector;
+import net.minecraft.block.Block;
+import net.minecraft.block.BlockState;
+import net.minecraft.state.Property;
+import net.minecraftforge.common.BiomeDictionary;
+import net.minecraftforge.registries.ForgeRegistries;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Binary cache of the variants loaded from variants.json, so that later loads can skip parsing the JSON.
+ *
+ * Parsing variants.json goes through Gson reflection and resolves every block state string, every time it is loaded.
+ * The cache instead stores block states by their numeric IDs and selectors as plain arrays,
+ * which can be read back without any parsing.
+ *
+ * The cache is keyed by the SHA-256 hash of variants.json and a fingerprint of the block registry,
+ * since block state IDs change whenever blocks or their properties are added, removed or reordered.
+ * The variants themselves are covered by a CRC32 checksum, which is verified before anything is built from them.
+ * If any of these don't match, or the cache can't be read, the cache is ignored and rebuilt from the JSON.
+ *
+ * Selector entries are stored in the iteration order of the selectors parsed from the JSON,
+ * so compiled selectors read from the cache pick exactly the same blocks.
+ */
+public final class MineshaftVariantsCache {
+    private static final int MAGIC = 0x424D5356; // "BMSV"
+    private static final int FORMAT_VERSION = 2;
+    private static final int HASH_LENGTH = 32;
+    private static final int MAX_PAYLOAD_LENGTH = 64 * 1024 * 1024;
+
+    private MineshaftVariantsCache() {}
+
+    /**
+     * Returns the SHA-256 hash of the given bytes.
+     */
+    public static byte[] hash(byte[] bytes) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(bytes);
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java implementation is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Returns a hash of every registered block's name and properties, in registry order.
+     * Block state IDs are assigned in this order, each block's states being ordered by its properties and their values,
+     * so if this hash matches, so do the IDs.
+     */
+    private static byte[] registryFingerprint() {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        for (Block block : ForgeRegistries.BLOCKS.getValues()) {
+            updateDigest(digest, String.valueOf(block.getRegistryName()));
+            for (Property<?> property : block.getStateContainer().getProperties()) {
+                updateDigest(digest, "[" + property.getName());
+                updatePropertyValues(digest, property);
+            }
+            updateDigest(digest, ";");
+        }
+        return digest.digest();
+    }
+
+    private static <T extends Comparable<T>> void updatePropertyValues(MessageDigest digest, Property<T> property) {
+        for (T value : property.getAllowedValues()) {
+            updateDigest(digest, "=" + property.getName(value));
+        }
+    }
+
+    private static void updateDigest(MessageDigest digest, String string) {
+        digest.update(string.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Reads variants from the cache at the given path.
+     * @param jsonHash Hash of the variants.json the cache must have been built from
+     * @return The variants, or null if there is no usable cache for this JSON and block registry
+     */
+    public static MineshaftVariants read(Path path, byte[] jsonHash) {
+        if (!Files.isRegularFile(path)) {
+            return null;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                return null;
+            }
+            if (!Arrays.equals(readBytes(in, HASH_LENGTH), jsonHash) || !Arrays.equals(readBytes(in, HASH_LENGTH), registryFingerprint())) {
+                return null;
+            }
+
+            // Verify the payload before building anything from it
+            long checksum = in.readLong();
+            byte[] payload = readBytes(in, MAX_PAYLOAD_LENGTH);
+            if (checksum(payload) != checksum) {
+                BetterMineshafts.LOGGER.warn("Better Mineshafts variants cache is corrupted, so variants.json will be parsed instead.");
+                return null;
+            }
+
+            return readPayload(new DataInputStream(new ByteArrayInputStream(payload)));
+        } catch (IOException | RuntimeException e) {
+            BetterMineshafts.LOGGER.warn("Unable to read Better Mineshafts variants cache, so variants.json will be parsed instead: {}", e.toString());
+            return null;
+        }
+    }
+
+    private static MineshaftVariants readPayload(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        List<MineshaftVariantSettings> variants = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            variants.add(readVariant(in));
+        }
+        MineshaftVariantSettings defaultVariant = readVariant(in);
+        return MineshaftVariants.of(variants, defaultVariant);
+    }
+
+    /**
+     * Returns the CRC32 of the given bytes.
+     */
+    private static long checksum(byte[] bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length);
+        return crc.getValue();
+    }
+
+    /**
+     * Writes the given variants to the cache at the given path.
+     * The cache is written to a temporary file first, so a partially written cache is never read.
+     * Failing to write the cache isn't fatal, since it only makes later loads slower.
+     * @param jsonHash Hash of the variants.json the variants were parsed from
+     */
+    public static void write(Path path, byte[] jsonHash, MineshaftVariants variants) {
+        Path tempPath = null;
+        try {
+            // Each write gets its own temporary file, in case several loads finish at once
+            tempPath = Files.createTempFile(path.toAbsolutePath().getParent(), "variants", ".tmp");
+            ByteArrayOutputStream payloadBytes = new ByteArrayOutputStream();
+            try (DataOutputStream payload = new DataOutputStream(payloadBytes)) {
+                payload.writeInt(variants.getVariants().size());
+                for (MineshaftVariantSettings variant : variants.getVariants()) {
+                    writeVariant(payload, variant);
+                }
+                writeVariant(payload, variants.getDefault());
+            }
+            byte[] payload = payloadBytes.toByteArray();
+
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempPath)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                writeBytes(out, jsonHash);
+                writeBytes(out, registryFingerprint());
+                out.writeLong(checksum(payload));
+                writeBytes(out, payload);
+            }
+            Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            BetterMineshafts.LOGGER.warn("Unable to write Better Mineshafts variants cache: {}", e.toString());
+            if (tempPath != null) {
+                try {
+                    Files.deleteIfExists(tempPath);
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    private static void writeVariant(DataOutputStream out, MineshaftVariantSettings variant) throws IOException {
+        out.writeBoolean(variant.id != null);
+        if (variant.id != null) {
+            out.writeUTF(variant.id);
+        }
+
+        out.writeInt(variant.biomeTags == null ? -1 : variant.biomeTags.size());
+        if (variant.biomeTags != null) {
+            for (List<BiomeDictionary.Type> tagList : variant.biomeTags) {
+                out.writeInt(tagList.size());
+                for (BiomeDictionary.Type tag : tagList) {
+                    out.writeUTF(tag.getName());
+                }
+            }
+        }
+
+        writeSelector(out, variant.mainSelector);
+        writeSelector(out, variant.floorSelector);
+        writeSelector(out, variant.brickSelector);
+        writeSelector(out, variant.legSelector);
+
+        writeState(out, variant.mainBlock);
+        writeState(out, variant.supportBlock);
+        writeState(out, variant.slabBlock);
+        writeState(out, variant.gravelBlock);
+        writeState(out, variant.stoneWallBlock);
+        writeState(out, variant.stoneSlabBlock);
+        writeState(out, variant.trapdoorBlock);
+
+        out.writeFloat(variant.vineChance);
+        out.writeFloat(variant.snowChance);
+        out.writeFloat(variant.cactusChance);
+        out.writeFloat(variant.deadBushChance);
+        out.writeFloat(variant.mushroomChance);
+        out.writeInt(variant.legVariant);
+        out.writeBoolean(variant.flammableLegs);
+        out.writeFloat(variant.replacementRate);
+    }
+
+    private static MineshaftVariantSettings readVariant(DataInputStream in) throws IOException {
+        MineshaftVariantSettings variant = new MineshaftVariantSettings();
+        // Fields are set directly, like Gson does, since the setters would change the selectors' default blocks
+        if (in.readBoolean()) {
+            variant.id = in.readUTF();
+        }
+
+        int tagListCount = in.readInt();
+        if (tagListCount >= 0) {
+            variant.biomeTags = new ArrayList<>(tagListCount);
+            for (int i = 0; i < tagListCount; i++) {
+                int tagCount = in.readInt();
+                List<BiomeDictionary.Type> tagList = new ArrayList<>(tagCount);
+                for (int j = 0; j < tagCount; j++) {
+                    tagList.add(BiomeDictionary.Type.getType(in.readUTF()));
+                }
+                variant.biomeTags.add(tagList);
+            }
+        }
+
+        SelectorData main = readSelector(in);
+        SelectorData floor = readSelector(in);
+        SelectorData brick = readSelector(in);
+        SelectorData leg = readSelector(in);
+        variant.mainSelector = main.toSelector();
+        variant.floorSelector = floor.toSelector();
+        variant.brickSelector = brick.toSelector();
+        variant.legSelector = leg.toSelector();
+        variant.setCompiledSelectors(main.compile(), floor.compile(), brick.compile(), leg.compile());
+
+        variant.mainBlock = readState(in);
+        variant.supportBlock = readState(in);
+        variant.slabBlock = readState(in);
+        variant.gravelBlock = readState(in);
+        variant.stoneWallBlock = readState(in);
+        variant.stoneSlabBlock = readState(in);
+        variant.trapdoorBlock = readState(in);
+
+        variant.vineChance = in.readFloat();
+        variant.snowChance = in.readFloat();
+        variant.cactusChance = in.readFloat();
+        variant.deadBushChance = in.readFloat();
+        variant.mushroomChance = in.readFloat();
+        variant.legVariant = in.readInt();
+        variant.flammableLegs = in.readBoolean();
+        variant.replacementRate = in.readFloat();
+        return variant;
+    }
+
+    /**
+     * Entries of a selector, in the iteration order of the selector they were written from.
+     */
+    private static final class SelectorData {
+        private final BlockState[] states;
+        private final float[] chances;
+        private final BlockState defaultState;
+
+        private SelectorData(BlockState[] states, float[] chances, BlockState defaultState) {
+            this.states = states;
+            this.chances = chances;
+            this.defaultState = defaultState;
+        }
+
+        private BlockSetSelector toSelector() {
+            BlockSetSelector selector = new BlockSetSelector();
+            for (int i = 0; i < states.length; i++) {
+                selector.addBlock(states[i], chances[i]);
+            }
+            selector.setDefaultBlockState(defaultState);
+            return selector;
+        }
+
+        private CompiledBlockSetSelector compile() {
+            return CompiledBlockSetSelector.compile(states, chances, defaultState);
+        }
+    }
+
+    private static void writeSelector(DataOutputStream out, BlockSetSelector selector) throws IOException {
+        Map<BlockState, Float> entries = selector.getEntries();
+        out.writeInt(entries.size());
+        for (Map.Entry<BlockState, Float> entry : entries.entrySet()) {
+            writeState(out, entry.getKey());
+            out.writeFloat(entry.getValue());
+        }
+        writeState(out, selector.getDefaultBlockState());
+    }
+
+    private static SelectorData readSelector(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        BlockState[] states = new BlockState[count];
+        float[] chances = new float[count];
+        for (int i = 0; i < count; i++) {
+            states[i] = readState(in);
+            chances[i] = in.readFloat();
+        }
+        return new SelectorData(states, chances, readState(in));
+    }
+
+    private static void writeState(DataOutputStream out, BlockState state) throws IOException {
+        out.writeInt(state == null ? -1 : Block.getStateId(state));
+    }
+
+    private static BlockState readState(DataInputStream in) throws IOException {
+        int id = in.readInt();
+        return id < 0 ? null : Block.getStateById(id);
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static byte[] readBytes(DataInputStream in, int maxLength) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > maxLength) {
+            throw new IOException("Invalid length " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+}
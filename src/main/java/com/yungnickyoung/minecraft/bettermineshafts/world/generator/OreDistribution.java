@@ -0,0 +1,208 @@
+package com.yungnickyoung.minecraft.bettermineshafts.world.generator;
+
+import com.yungnickyoung.minecraft.bettermineshafts.BetterMineshafts;
+import com.yungnickyoung.minecraft.bettermineshafts.config.ConfigSnapshot;
+import net.minecraft.block.Block;
+import net.minecraft.block.BlockState;
+import net.minecraft.block.Blocks;
+import net.minecraft.util.ResourceLocation;
+import net.minecraft.util.ResourceLocationException;
+import net.minecraftforge.registries.ForgeRegistries;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Picks the ore placed in each ore deposit, using the ore chances from the config.
+ *
+ * The chances of the built-in ores are followed by any extra ores from the config, which may be any registered block.
+ * Chances are normalized to 100 slots of a {@link WeightedTable}, giving leftover slots to the largest remainders,
+ * so picking an ore always consumes exactly one random.nextInt(100), as it always has.
+ * With the default chances, which add up to 100, every roll picks the same ore it always has.
+ *
+ * Extra ores may come from any mod, so the distribution is built once all blocks are registered:
+ * whenever a server starts, and again whenever the config is reloaded.
+ * Worldgen only ever reads the distribution, so problems with the config are logged once per build.
+ */
+public final class OreDistribution {
+    private static volatile OreDistribution current;
+
+    private static final int SLOTS = 100;
+
+    /** Ores of the built-in chances, in the order they were saved in before ores were saved by name **/
+    private static final BlockState[] LEGACY_ORES = {
+        Blocks.COBBLESTONE.getDefaultState(),
+        Blocks.COAL_ORE.getDefaultState(),
+        Blocks.IRON_ORE.getDefaultState(),
+        Blocks.REDSTONE_ORE.getDefaultState(),
+        Blocks.GOLD_ORE.getDefaultState(),
+        Blocks.LAPIS_ORE.getDefaultState(),
+        Blocks.EMERALD_ORE.getDefaultState(),
+        Blocks.DIAMOND_ORE.getDefaultState()
+    };
+
+    private final WeightedTable<BlockState> table;
+
+    private OreDistribution(ConfigSnapshot config) {
+        List<BlockState> ores = new ArrayList<>();
+        List<Integer> chances = new ArrayList<>();
+        int[] builtInChances = {
+            config.cobbleChance,
+            config.coalChance,
+            config.ironChance,
+            config.redstoneChance,
+            config.goldChance,
+            config.lapisChance,
+            config.emeraldChance,
+            config.diamondChance
+        };
+        for (int i = 0; i < LEGACY_ORES.length; i++) {
+            ores.add(LEGACY_ORES[i]);
+            chances.add(builtInChances[i]);
+        }
+        addExtraOres(config.extraOres, ores, chances);
+
+        this.table = buildTable(ores, chances);
+    }
+
+    /**
+     * Parses extra ore entries of the form "modid:block=chance", skipping (and logging) any that are invalid.
+     * Like the built-in chances, each chance must be between 0 and 100.
+     */
+    private static void addExtraOres(List<String> entries, List<BlockState> ores, List<Integer> chances) {
+        for (String entry : entries) {
+            int separator = entry.lastIndexOf('=');
+            if (separator < 0) {
+                BetterMineshafts.LOGGER.error("Invalid extra ore deposit entry '{}'. Expected the form modid:block=chance. Skipping...", entry);
+                continue;
+            }
+
+            String blockName = entry.substring(0, separator).trim();
+            int chance;
+            try {
+                chance = Integer.parseInt(entry.substring(separator + 1).trim());
+            } catch (NumberFormatException e) {
+                BetterMineshafts.LOGGER.error("Invalid chance in extra ore deposit entry '{}'. Skipping...", entry);
+                continue;
+            }
+            if (chance < 0 || chance > SLOTS) {
+                BetterMineshafts.LOGGER.error("Chance in extra ore deposit entry '{}' must be between 0 and {}. Skipping...", entry, SLOTS);
+                continue;
+            }
+
+            BlockState ore = getOre(blockName);
+            if (ore == null) {
+                BetterMineshafts.LOGGER.error("Unknown block '{}' in extra ore deposit entry '{}'. Skipping...", blockName, entry);
+                continue;
+            }
+
+            ores.add(ore);
+            chances.add(chance);
+        }
+    }
+
+    /**
+     * Distributes the 100 slots proportionally to the chances, using the largest remainder method.
+     */
+    private static WeightedTable<BlockState> buildTable(List<BlockState> ores, List<Integer> chances) {
+        int total = 0;
+        for (int chance : chances) {
+            total += chance;
+        }
+
+        WeightedTable.Builder<BlockState> builder = WeightedTable.builder();
+        if (total == 0) {
+            BetterMineshafts.LOGGER.error("All ore deposit spawn chances are 0! Ore deposits will only contain cobblestone.");
+            return builder.add(Blocks.COBBLESTONE.getDefaultState(), SLOTS).build();
+        }
+        if (total != SLOTS) {
+            BetterMineshafts.LOGGER.warn("Your ore deposit spawn chances add up to {} instead of {}. They will be scaled to add up to {}.", total, SLOTS, SLOTS);
+        }
+
+        int n = ores.size();
+        int[] slots = new int[n];
+        long[] remainders = new long[n];
+        int assigned = 0;
+        for (int i = 0; i < n; i++) {
+            long scaled = (long) chances.get(i) * SLOTS;
+            slots[i] = (int) (scaled / total);
+            remainders[i] = scaled % total;
+            assigned += slots[i];
+        }
+
+        // Hand out the leftover slots one at a time, to the largest remainders first. Ties go to the earlier ore.
+        for (; assigned < SLOTS; assigned++) {
+            int largest = 0;
+            for (int i = 1; i < n; i++) {
+                if (remainders[i] > remainders[largest]) {
+                    largest = i;
+                }
+            }
+            slots[largest]++;
+            remainders[largest] = -1;
+        }
+
+        for (int i = 0; i < n; i++) {
+            builder.add(ores.get(i), slots[i]);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Returns the current distribution, building it first if it hasn't been built yet.
+     */
+    public static OreDistribution get() {
+        OreDistribution distribution = current;
+        if (distribution == null) {
+            synchronized (OreDistribution.class) {
+                distribution = current;
+                if (distribution == null) {
+                    distribution = rebuild();
+                }
+            }
+        }
+        return distribution;
+    }
+
+    /**
+     * Replaces the current distribution with one built from the current config snapshot.
+     * Should be called whenever a server starts or the config is reloaded, after the snapshot has been rebuilt.
+     */
+    public static synchronized OreDistribution rebuild() {
+        OreDistribution distribution = new OreDistribution(ConfigSnapshot.get());
+        current = distribution;
+        return distribution;
+    }
+
+    /**
+     * Picks an ore, consuming exactly one random.nextInt(100).
+     */
+    public BlockState sample(Random random) {
+        return table.sample(random);
+    }
+
+    /**
+     * Returns the ore block with the given registry name, or null if there is no such block.
+     */
+    public static BlockState getOre(String name) {
+        ResourceLocation location;
+        try {
+            location = new ResourceLocation(name);
+        } catch (ResourceLocationException e) {
+            return null;
+        }
+        if (!ForgeRegistries.BLOCKS.containsKey(location)) {
+            return null;
+        }
+        Block block = ForgeRegistries.BLOCKS.getValue(location);
+        return block == null ? null : block.getDefaultState();
+    }
+
+    /**
+     * Returns the ore saved with the given index by pieces saved before ores were saved by name.
+     */
+    public static BlockState getLegacyOre(int index) {
+        return index >= 0 && index < LEGACY_ORES.length ? LEGACY_ORES[index] : LEGACY_ORES[0];
+    }
+}
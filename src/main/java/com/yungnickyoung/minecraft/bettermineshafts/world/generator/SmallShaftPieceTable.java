@@ -0,0 +1,91 @@
+package com.yungnickyoung.minecraft.bettermineshafts.world.generator;
+
+import com.yungnickyoung.minecraft.bettermineshafts.config.ConfigSnapshot;
+
+import java.util.Random;
+
+/**
+ * Picks the next piece in a small shaft, using the piece weights from the config.
+ *
+ * Some pieces may not be placed at certain points of a shaft: intersections and turns can't be placed early on,
+ * and intersections and stairs can't be placed right before the end of the shaft.
+ * There is one {@link WeightedTable} per combination of these restrictions, built once per config snapshot.
+ *
+ * The weight of a piece that isn't allowed goes to the next allowed piece below it in {@link Piece}'s order,
+ * which is how the old threshold cascade behaved. With the default weights, which add up to 100,
+ * every roll picks the same piece it always has, so existing seeds keep their layouts.
+ */
+public final class SmallShaftPieceTable {
+    private static volatile SmallShaftPieceTable current;
+
+    /**
+     * Pieces that can make up the middle of a small shaft.
+     * Listed in order of increasing roll, i.e. a roll in the lowest range picks SMALL_TUNNEL.
+     */
+    public enum Piece {
+        SMALL_TUNNEL,
+        LAYERED_INTERSECTION_5,
+        SMALL_TUNNEL_TURN,
+        SMALL_TUNNEL_STAIRS,
+        LAYERED_INTERSECTION_4
+    }
+
+    private static final int EARLY = 1;
+    private static final int LAST = 2;
+
+    private final ConfigSnapshot config;
+    private final WeightedTable<Piece>[] tables;
+
+    @SuppressWarnings("unchecked")
+    private SmallShaftPieceTable(ConfigSnapshot config) {
+        this.config = config;
+        this.tables = new WeightedTable[4];
+        for (int restrictions = 0; restrictions < tables.length; restrictions++) {
+            tables[restrictions] = buildTable((restrictions & EARLY) != 0, (restrictions & LAST) != 0);
+        }
+    }
+
+    private WeightedTable<Piece> buildTable(boolean early, boolean last) {
+        WeightedTable.Builder<Piece> builder = WeightedTable.builder();
+        Piece fallback = Piece.SMALL_TUNNEL; // Small tunnels are allowed anywhere
+        builder.add(Piece.SMALL_TUNNEL, config.smallTunnelWeight);
+        fallback = addIfAllowed(builder, Piece.LAYERED_INTERSECTION_5, config.layeredIntersection5Weight, !early && !last, fallback);
+        fallback = addIfAllowed(builder, Piece.SMALL_TUNNEL_TURN, config.smallTunnelTurnWeight, !early, fallback);
+        fallback = addIfAllowed(builder, Piece.SMALL_TUNNEL_STAIRS, config.smallTunnelStairsWeight, !last, fallback);
+        addIfAllowed(builder, Piece.LAYERED_INTERSECTION_4, config.layeredIntersection4Weight, !early && !last, fallback);
+        return builder.build();
+    }
+
+    /**
+     * Adds the piece's weight to the builder, going to the fallback if the piece isn't allowed.
+     * @return The piece any weight of the following pieces should go to if they aren't allowed
+     */
+    private static Piece addIfAllowed(WeightedTable.Builder<Piece> builder, Piece piece, int weight, boolean allowed, Piece fallback) {
+        builder.add(allowed ? piece : fallback, weight);
+        return allowed ? piece : fallback;
+    }
+
+    /**
+     * Returns the table for the current config, rebuilding it if the config has changed.
+     */
+    public static SmallShaftPieceTable get() {
+        ConfigSnapshot config = ConfigSnapshot.get();
+        SmallShaftPieceTable table = current;
+        if (table == null || table.config != config) {
+            table = new SmallShaftPieceTable(config);
+            current = table;
+        }
+        return table;
+    }
+
+    /**
+     * Picks the piece following the piece with the given chain length, consuming one random.nextInt(totalWeight).
+     * Must not be used for the end of the shaft, i.e. chain lengths greater than smallShaftPieceChainLength - 2.
+     */
+    public Piece select(Random random, int chainLength) {
+        int restrictions = 0;
+        if (chainLength <= 2) restrictions |= EARLY;
+        if (chainLength >= config.smallShaftPieceChainLength - 2) restrictions |= LAST;
+        return tables[restrictions].sample(random);
+    }
+}
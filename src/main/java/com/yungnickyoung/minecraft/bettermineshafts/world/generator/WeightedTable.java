@@ -0,0 +1,88 @@
+package com.yungnickyoung.minecraft.bettermineshafts.world.generator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Immutable table for picking one of several values with integer weights.
+ *
+ * The table holds one slot per unit of weight, so picking a value is a single array lookup
+ * indexed by one random.nextInt(totalWeight) call. A value with weight w covers w consecutive slots,
+ * in the order values were added, which is what a chain of "if (rand < threshold)" checks
+ * over the same weights would pick for the same roll.
+ *
+ * Since weights are meant to come from config (and so are small), the size of the table is not a concern.
+ */
+public final class WeightedTable<T> {
+    private final Object[] slots;
+
+    private WeightedTable(Object[] slots) {
+        this.slots = slots;
+    }
+
+    /**
+     * @return The sum of all weights, i.e. the exclusive upper bound for rolls
+     */
+    public int getTotalWeight() {
+        return slots.length;
+    }
+
+    /**
+     * Returns the value covering the given roll, which must be in [0, totalWeight).
+     */
+    @SuppressWarnings("unchecked")
+    public T get(int roll) {
+        return (T) slots[roll];
+    }
+
+    /**
+     * Picks a value, consuming exactly one random.nextInt(totalWeight).
+     */
+    public T sample(Random random) {
+        return get(random.nextInt(slots.length));
+    }
+
+    public static <T> Builder<T> builder() {
+        return new Builder<>();
+    }
+
+    public static final class Builder<T> {
+        private final List<T> values = new ArrayList<>();
+        private final List<Integer> weights = new ArrayList<>();
+        private int totalWeight = 0;
+
+        private Builder() {}
+
+        /**
+         * Adds a value covering the next {@code weight} slots. Values with a weight of 0 are never picked.
+         */
+        public Builder<T> add(T value, int weight) {
+            if (weight < 0) {
+                throw new IllegalArgumentException("Negative weight " + weight + " for " + value);
+            }
+            values.add(value);
+            weights.add(weight);
+            totalWeight += weight;
+            return this;
+        }
+
+        /**
+         * @throws IllegalStateException if the total weight is 0, since nothing could ever be picked
+         */
+        public WeightedTable<T> build() {
+            if (totalWeight <= 0) {
+                throw new IllegalStateException("Weighted table has no weight");
+            }
+            Object[] slots = new Object[totalWeight];
+            int start = 0;
+            for (int i = 0; i < values.size(); i++) {
+                int end = start + weights.get(i);
+                Arrays.fill(slots, start, end, values.get(i));
+                start = end;
+            }
+            return new WeightedTable<>(slots);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.yungnickyoung.minecraft.bettermineshafts.world.generator.jfr;
+
+import com.yungnickyoung.minecraft.bettermineshafts.world.generator.MineshaftVariantSettings;
+import com.yungnickyoung.minecraft.bettermineshafts.world.generator.pieces.MineshaftPiece;
+import jdk.jfr.EventType;
+import jdk.jfr.FlightRecorder;
+import net.minecraft.util.math.ChunkPos;
+
+/**
+ * Holds everything that touches the jdk.jfr API.
+ * Must only be used through {@link MineshaftEvents}, which makes sure the API exists first.
+ *
+ * Events are passed around as Objects so that callers never need to load the event classes themselves.
+ */
+final class JfrEvents {
+    private static final EventType LAYOUT_TYPE = EventType.getEventType(MineshaftLayoutEvent.class);
+    private static final EventType PLACEMENT_TYPE = EventType.getEventType(PiecePlacementEvent.class);
+
+    private JfrEvents() {}
+
+    static boolean isAvailable() {
+        return FlightRecorder.isAvailable();
+    }
+
+    static Object beginLayout() {
+        if (!LAYOUT_TYPE.isEnabled()) {
+            return null;
+        }
+        MineshaftLayoutEvent event = new MineshaftLayoutEvent();
+        event.begin();
+        return event;
+    }
+
+    static void endLayout(Object e, int chunkX, int chunkZ, MineshaftVariantSettings settings, int pieceCount) {
+        MineshaftLayoutEvent event = (MineshaftLayoutEvent) e;
+        event.end();
+        if (event.shouldCommit()) {
+            event.chunkX = chunkX;
+            event.chunkZ = chunkZ;
+            event.variant = settings.id;
+            event.pieceCount = pieceCount;
+            event.commit();
+        }
+    }
+
+    static Object beginPlacement() {
+        if (!PLACEMENT_TYPE.isEnabled()) {
+            return null;
+        }
+        PiecePlacementEvent event = new PiecePlacementEvent();
+        event.begin();
+        return event;
+    }
+
+    static void endPlacement(Object e, MineshaftPiece piece, ChunkPos chunkPos, boolean placed) {
+        PiecePlacementEvent event = (PiecePlacementEvent) e;
+        event.end();
+        if (event.shouldCommit()) {
+            event.pieceType = piece.getClass().getSimpleName();
+            event.chunkX = chunkPos.x;
+            event.chunkZ = chunkPos.z;
+            event.variant = piece.getSettings().id;
+            event.voxels = piece.getVoxelsPlaced();
+            event.entities = piece.getEntitiesSpawned();
+            event.placed = placed;
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.yungnickyoung.minecraft.bettermineshafts.world.generator.jfr;
+
+import com.yungnickyoung.minecraft.bettermineshafts.BetterMineshafts;
+import com.yungnickyoung.minecraft.bettermineshafts.world.generator.MineshaftVariantSettings;
+import com.yungnickyoung.minecraft.bettermineshafts.world.generator.pieces.MineshaftPiece;
+import net.minecraft.util.math.ChunkPos;
+
+/**
+ * Entry point for emitting JDK Flight Recorder events, so that time spent in this mod shows up in flight recordings.
+ *
+ * Not every Java 8 runtime ships the jdk.jfr API, so this class never touches it directly.
+ * All JFR classes are only loaded through {@link JfrEvents}, and only once we know the API is available.
+ *
+ * Each event is started with a begin method, which returns null if the event isn't being recorded,
+ * and finished with the matching end method. When recording is off, this is just a couple of checks.
+ */
+public final class MineshaftEvents {
+    private static final boolean AVAILABLE = isAvailable();
+
+    private MineshaftEvents() {}
+
+    private static boolean isAvailable() {
+        try {
+            Class.forName("jdk.jfr.Event", false, MineshaftEvents.class.getClassLoader());
+            return JfrEvents.isAvailable();
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        } catch (Exception e) {
+            BetterMineshafts.LOGGER.warn("Unable to set up Flight Recorder events: {}", e.toString());
+            return false;
+        }
+    }
+
+    /**
+     * Starts timing the layout of a mineshaft.
+     * @return The event, or null if it isn't being recorded
+     */
+    public static Object beginLayout() {
+        return AVAILABLE ? JfrEvents.beginLayout() : null;
+    }
+
+    public static void endLayout(Object event, int chunkX, int chunkZ, MineshaftVariantSettings settings, int pieceCount) {
+        if (event != null) {
+            JfrEvents.endLayout(event, chunkX, chunkZ, settings, pieceCount);
+        }
+    }
+
+    /**
+     * Starts timing the placement of a single piece into a chunk.
+     * @return The event, or null if it isn't being recorded
+     */
+    public static Object beginPlacement() {
+        return AVAILABLE ? JfrEvents.beginPlacement() : null;
+    }
+
+    public static void endPlacement(Object event, MineshaftPiece piece, ChunkPos chunkPos, boolean placed) {
+        if (event != null) {
+            JfrEvents.endPlacement(event, piece, chunkPos, placed);
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.yungnickyoung.minecraft.bettermineshafts.world.generator.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("bettermineshafts.MineshaftLayout")
+@Label("Mineshaft Layout")
+@Category("Better Mineshafts")
+@Description("Laying out all pieces of a mineshaft when its structure start is created")
+class MineshaftLayoutEvent extends Event {
+    @Label("Chunk X")
+    int chunkX;
+
+    @Label("Chunk Z")
+    int chunkZ;
+
+    @Label("Variant")
+    @Description("ID of the mineshaft variant")
+    String variant;
+
+    @Label("Pieces")
+    int pieceCount;
+}
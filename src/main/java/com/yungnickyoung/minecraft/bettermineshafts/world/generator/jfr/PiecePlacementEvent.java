@@ -0,0 +1,38 @@
+package com.yungnickyoung.minecraft.bettermineshafts.world.generator.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("bettermineshafts.PiecePlacement")
+@Label("Mineshaft Piece Placement")
+@Category("Better Mineshafts")
+@Description("Placing the blocks of a single mineshaft piece into a chunk")
+class PiecePlacementEvent extends Event {
+    @Label("Piece Type")
+    String pieceType;
+
+    @Label("Chunk X")
+    int chunkX;
+
+    @Label("Chunk Z")
+    int chunkZ;
+
+    @Label("Variant")
+    @Description("ID of the mineshaft variant")
+    String variant;
+
+    @Label("Voxels")
+    @Description("Number of blocks set")
+    int voxels;
+
+    @Label("Entities")
+    @Description("Number of entities spawned, i.e. minecarts")
+    int entities;
+
+    @Label("Placed")
+    @Description("False if the piece was skipped, e.g. because of liquid or an ocean")
+    boolean placed;
+}
@@ -1,20 +1,18 @@
 package com.yungnickyoung.minecraft.bettermineshafts.world.generator.pieces;
 
-import com.google.common.collect.Lists;
 import com.mojang.datafixers.util.Pair;
-import com.yungnickyoung.minecraft.bettermineshafts.config.Configuration;
+import com.yungnickyoung.minecraft.bettermineshafts.config.ConfigSnapshot;
 import com.yungnickyoung.minecraft.bettermineshafts.world.generator.BetterMineshaftGenerator;
 import com.yungnickyoung.minecraft.bettermineshafts.world.generator.BetterMineshaftStructurePieceType;
+import com.yungnickyoung.minecraft.bettermineshafts.world.generator.CompiledBlockSetSelector;
+import com.yungnickyoung.minecraft.bettermineshafts.world.generator.MineshaftLayoutEngine;
 import com.yungnickyoung.minecraft.bettermineshafts.world.generator.MineshaftVariantSettings;
-import com.yungnickyoung.minecraft.yungsapi.world.BlockSetSelector;
 import com.yungnickyoung.minecraft.yungsapi.world.BoundingBoxHelper;
 import net.minecraft.block.*;
 import net.minecraft.entity.item.minecart.ChestMinecartEntity;
 import net.minecraft.entity.item.minecart.TNTMinecartEntity;
 import net.minecraft.loot.LootTables;
 import net.minecraft.nbt.CompoundNBT;
-import net.minecraft.nbt.IntArrayNBT;
-import net.minecraft.nbt.IntNBT;
 import net.minecraft.nbt.ListNBT;
 import net.minecraft.util.Direction;
 import net.minecraft.util.ResourceLocation;
@@ -28,16 +26,21 @@ import net.minecraft.world.gen.feature.structure.StructurePiece;
 import net.minecraft.world.gen.feature.template.TemplateManager;
 
 import javax.annotation.ParametersAreNonnullByDefault;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
 
 public class BigTunnel extends MineshaftPiece {
-    private final List<BlockPos> smallShaftLeftEntrances = Lists.newLinkedList();
-    private final List<BlockPos> smallShaftRightEntrances = Lists.newLinkedList();
-    private final List<MutableBoundingBox> sideRoomEntrances = Lists.newLinkedList();
-    private final List<Integer> bigSupports = Lists.newLinkedList(); // local z coords
-    private final List<Integer> smallSupports = Lists.newLinkedList(); // local z coords
-    private final List<Pair<Integer, Integer>> gravelDeposits = Lists.newLinkedList(); // Pair<z coordinate, side> where side 0 = left, 1 = right
+    private final List<BlockPos> smallShaftLeftEntrances = new ArrayList<>();
+    private final List<BlockPos> smallShaftRightEntrances = new ArrayList<>();
+    private final List<MutableBoundingBox> sideRoomEntrances = new ArrayList<>();
+    private final List<Integer> bigSupports = new ArrayList<>(); // local z coords
+    private final List<Integer> smallSupports = new ArrayList<>(); // local z coords
+    private final List<Pair<Integer, Integer>> gravelDeposits = new ArrayList<>(); // Pair<z coordinate, side> where side 0 = left, 1 = right
+
+    // Version of the NBT format. Pieces saved before versioning was added use version 0, with one tag per list element.
+    private static final int NBT_VERSION = 1;
+
     private static final int
         SECONDARY_AXIS_LEN = 9,
         Y_AXIS_LEN = 8,
@@ -49,7 +52,85 @@ public class BigTunnel extends MineshaftPiece {
 
     public BigTunnel(TemplateManager structureManager, CompoundNBT compoundTag) {
         super(BetterMineshaftStructurePieceType.BIG_TUNNEL, compoundTag);
+        if (compoundTag.getInt("NbtVersion") >= 1) {
+            readPacked(compoundTag);
+        } else {
+            readLegacy(compoundTag);
+        }
+    }
+
+    public BigTunnel(int chainLength, Random random, MutableBoundingBox blockBox, Direction direction, MineshaftVariantSettings settings) {
+        super(BetterMineshaftStructurePieceType.BIG_TUNNEL, chainLength, settings);
+        this.setCoordBaseMode(direction);
+        this.boundingBox = blockBox;
+    }
+
+    @Override
+    @ParametersAreNonnullByDefault
+    protected void readAdditional(CompoundNBT tag) {
+        super.toNbt(tag);
+        tag.putInt("NbtVersion", NBT_VERSION);
+
+        // Each list is packed into a single array
+        tag.putLongArray("LeftEntrances", smallShaftLeftEntrances.stream().mapToLong(BlockPos::toLong).toArray());
+        tag.putLongArray("RightEntrances", smallShaftRightEntrances.stream().mapToLong(BlockPos::toLong).toArray());
+
+        int[] sideRooms = new int[sideRoomEntrances.size() * 6];
+        for (int i = 0; i < sideRoomEntrances.size(); i++) {
+            MutableBoundingBox entrance = sideRoomEntrances.get(i);
+            sideRooms[i * 6] = entrance.minX;
+            sideRooms[i * 6 + 1] = entrance.minY;
+            sideRooms[i * 6 + 2] = entrance.minZ;
+            sideRooms[i * 6 + 3] = entrance.maxX;
+            sideRooms[i * 6 + 4] = entrance.maxY;
+            sideRooms[i * 6 + 5] = entrance.maxZ;
+        }
+        tag.putIntArray("SideRooms", sideRooms);
+
+        tag.putIntArray("BigSupportsZ", bigSupports.stream().mapToInt(Integer::intValue).toArray());
+        tag.putIntArray("SmallSupportsZ", smallSupports.stream().mapToInt(Integer::intValue).toArray());
+
+        int[] gravel = new int[gravelDeposits.size() * 2];
+        for (int i = 0; i < gravelDeposits.size(); i++) {
+            gravel[i * 2] = gravelDeposits.get(i).getFirst();
+            gravel[i * 2 + 1] = gravelDeposits.get(i).getSecond();
+        }
+        tag.putIntArray("Gravel", gravel);
+    }
+
+    private void readPacked(CompoundNBT compoundTag) {
+        for (long pos : compoundTag.getLongArray("LeftEntrances")) {
+            this.smallShaftLeftEntrances.add(BlockPos.fromLong(pos));
+        }
+
+        for (long pos : compoundTag.getLongArray("RightEntrances")) {
+            this.smallShaftRightEntrances.add(BlockPos.fromLong(pos));
+        }
+
+        int[] sideRooms = compoundTag.getIntArray("SideRooms");
+        for (int i = 0; i + 5 < sideRooms.length; i += 6) {
+            this.sideRoomEntrances.add(new MutableBoundingBox(sideRooms[i], sideRooms[i + 1], sideRooms[i + 2], sideRooms[i + 3], sideRooms[i + 4], sideRooms[i + 5]));
+        }
+
+        for (int z : compoundTag.getIntArray("BigSupportsZ")) {
+            this.bigSupports.add(z);
+        }
+
+        for (int z : compoundTag.getIntArray("SmallSupportsZ")) {
+            this.smallSupports.add(z);
+        }
+
+        int[] gravel = compoundTag.getIntArray("Gravel");
+        for (int i = 0; i + 1 < gravel.length; i += 2) {
+            this.gravelDeposits.add(new Pair<>(gravel[i], gravel[i + 1]));
+        }
+    }
 
+    /**
+     * Reads the format used before NBT versioning was added, with one tag per list element.
+     * The piece will be saved in the current format the next time its chunk is saved.
+     */
+    private void readLegacy(CompoundNBT compoundTag) {
         ListNBT listTag1 = compoundTag.getList("SmallShaftLeftEntrances", 11);
         ListNBT listTag2 = compoundTag.getList("SmallShaftRightEntrances", 11);
         ListNBT listTag3 = compoundTag.getList("SideRoomEntrances", 11);
@@ -58,11 +139,13 @@ public class BigTunnel extends MineshaftPiece {
         ListNBT listTag6 = compoundTag.getList("GravelDeposits", 11);
 
         for (int i = 0; i < listTag1.size(); ++i) {
-            this.smallShaftLeftEntrances.add(new BlockPos(listTag1.getIntArray(i)[0], listTag1.getIntArray(i)[1], listTag1.getIntArray(i)[2]));
+            int[] pos = listTag1.getIntArray(i);
+            this.smallShaftLeftEntrances.add(new BlockPos(pos[0], pos[1], pos[2]));
         }
 
         for (int i = 0; i < listTag2.size(); ++i) {
-            this.smallShaftRightEntrances.add(new BlockPos(listTag2.getIntArray(i)[0], listTag2.getIntArray(i)[1], listTag2.getIntArray(i)[2]));
+            int[] pos = listTag2.getIntArray(i);
+            this.smallShaftRightEntrances.add(new BlockPos(pos[0], pos[1], pos[2]));
         }
 
         for (int i = 0; i < listTag3.size(); ++i) {
@@ -78,40 +161,11 @@ public class BigTunnel extends MineshaftPiece {
         }
 
         for (int i = 0; i < listTag6.size(); ++i) {
-            this.gravelDeposits.add(new Pair<>(listTag6.getIntArray(i)[0], listTag6.getIntArray(i)[1]));
+            int[] deposit = listTag6.getIntArray(i);
+            this.gravelDeposits.add(new Pair<>(deposit[0], deposit[1]));
         }
     }
 
-    public BigTunnel(int chainLength, Random random, MutableBoundingBox blockBox, Direction direction, MineshaftVariantSettings settings) {
-        super(BetterMineshaftStructurePieceType.BIG_TUNNEL, chainLength, settings);
-        this.setCoordBaseMode(direction);
-        this.boundingBox = blockBox;
-    }
-
-    @Override
-    @ParametersAreNonnullByDefault
-    protected void readAdditional(CompoundNBT tag) {
-        super.toNbt(tag);
-        ListNBT listTag1 = new ListNBT();
-        ListNBT listTag2 = new ListNBT();
-        ListNBT listTag3 = new ListNBT();
-        ListNBT listTag4 = new ListNBT();
-        ListNBT listTag5 = new ListNBT();
-        ListNBT listTag6 = new ListNBT();
-        smallShaftLeftEntrances.forEach(pos -> listTag1.add(new IntArrayNBT(new int[]{pos.getX(), pos.getY(), pos.getZ()})));
-        smallShaftRightEntrances.forEach(pos -> listTag2.add(new IntArrayNBT(new int[]{pos.getX(), pos.getY(), pos.getZ()})));
-        sideRoomEntrances.forEach(blockBox -> listTag3.add(blockBox.toNBTTagIntArray()));
-        bigSupports.forEach(z -> listTag4.add(IntNBT.valueOf(z)));
-        smallSupports.forEach(z -> listTag5.add(IntNBT.valueOf(z)));
-        gravelDeposits.forEach(pair -> listTag6.add(new IntArrayNBT(new int[]{pair.getFirst(), pair.getSecond()})));
-        tag.put("SmallShaftLeftEntrances", listTag1);
-        tag.put("SmallShaftRightEntrances", listTag2);
-        tag.put("SideRoomEntrances", listTag3);
-        tag.put("BigSupports", listTag4);
-        tag.put("SmallSupports", listTag5);
-        tag.put("GravelDeposits", listTag6);
-    }
-
     public static MutableBoundingBox determineBoxPosition(int x, int y, int z, Direction direction) {
         return BoundingBoxHelper.boxFromCoordsWithRotation(x, y, z, SECONDARY_AXIS_LEN, Y_AXIS_LEN, MAIN_AXIS_LEN, direction);
     }
@@ -123,7 +177,26 @@ public class BigTunnel extends MineshaftPiece {
             return;
         }
 
-        // Extend big tunnel in same direction
+        // Get the length of the main axis. This SHOULD be equal to the MAIN_AXIS_LEN variable.
+        int pieceLen = this.getCoordBaseMode().getAxis() == Direction.Axis.Z ? this.boundingBox.getZSize() : this.boundingBox.getXSize();
+
+        MineshaftLayoutEngine.sequence(list,
+            // Extend big tunnel in same direction
+            () -> extendBigTunnel(structurePiece, list, random, direction),
+            // Build side rooms
+            () -> buildSideRoomsLeft(structurePiece, list, random, direction, pieceLen, 0),
+            () -> buildSideRoomsRight(structurePiece, list, random, direction, pieceLen, 0),
+            // Build small shafts and mark their entrances
+            () -> buildSmallShaftsLeft(structurePiece, list, random, direction, pieceLen, 0),
+            () -> buildSmallShaftsRight(structurePiece, list, random, direction, pieceLen, 5),
+            // Decorations
+            () -> {
+                buildSupports(random);
+                buildGravelDeposits(random);
+            });
+    }
+
+    private void extendBigTunnel(StructurePiece structurePiece, List<StructurePiece> list, Random random, Direction direction) {
         switch (direction) {
             case NORTH:
             default:
@@ -138,28 +211,13 @@ public class BigTunnel extends MineshaftPiece {
             case EAST:
                 BetterMineshaftGenerator.generateAndAddBigTunnelPiece(structurePiece, list, random, this.boundingBox.maxX + 1, this.boundingBox.minY, this.boundingBox.minZ, direction, chainLength);
         }
-
-        // Get the length of the main axis. This SHOULD be equal to the MAIN_AXIS_LEN variable.
-        int pieceLen = this.getCoordBaseMode().getAxis() == Direction.Axis.Z ? this.boundingBox.getZSize() : this.boundingBox.getXSize();
-
-        // Build side rooms
-        buildSideRoomsLeft(structurePiece, list, random, direction, pieceLen);
-        buildSideRoomsRight(structurePiece, list, random, direction, pieceLen);
-
-        // Build small shafts and mark their entrances
-        buildSmallShaftsLeft(structurePiece, list, random, direction, pieceLen);
-        buildSmallShaftsRight(structurePiece, list, random, direction, pieceLen);
-
-        // Decorations
-        buildSupports(random);
-        buildGravelDeposits(random);
     }
 
     @Override
     @ParametersAreNonnullByDefault
-    public boolean func_230383_a_(ISeedReader world, StructureManager structureManager, ChunkGenerator generator, Random random, MutableBoundingBox box, ChunkPos pos, BlockPos blockPos) {
+    protected boolean generate(ISeedReader world, StructureManager structureManager, ChunkGenerator generator, Random random, MutableBoundingBox box, ChunkPos pos, BlockPos blockPos) {
         // Don't spawn if in ocean biome
-        if (this.isInOcean(world, 0, 0) || this.isInOcean(world, LOCAL_X_END, LOCAL_Z_END)) return false;
+        if (this.isInOcean(world, 0, 0, LOCAL_X_END, LOCAL_Z_END)) return false;
 
         // Randomize blocks
         this.chanceReplaceNonAir(world, box, random, settings.replacementRate, 0, 0, 0, LOCAL_X_END, LOCAL_Y_END, LOCAL_Z_END, getMainSelector());
@@ -258,7 +316,7 @@ public class BigTunnel extends MineshaftPiece {
     }
 
     private void generateLegsVariant2(ISeedReader world, MutableBoundingBox box, Random random) {
-        BlockSetSelector selector = getLegSelector();
+        CompiledBlockSetSelector selector = getLegSelector();
         for (int z = 0; z <= LOCAL_Z_END; z += 7) {
             generateLeg(world, random, 2, z + 1);
             generateLeg(world, random, LOCAL_X_END - 2, z + 1);
@@ -319,25 +377,32 @@ public class BigTunnel extends MineshaftPiece {
     }
 
     private void generateChestCarts(ISeedReader world, MutableBoundingBox box, Random random, ResourceLocation lootTableId) {
+        BlockPos.Mutable cursor = new BlockPos.Mutable();
+        BlockPos.Mutable below = new BlockPos.Mutable();
+        double spawnRate = ConfigSnapshot.get().mainShaftChestMinecartSpawnRate;
         for (int z = 0; z <= LOCAL_Z_END; z++) {
-            if (random.nextFloat() < Configuration.spawnRates.mainShaftChestMinecartSpawnRate.get()) {
-                BlockPos blockPos = new BlockPos(this.getXWithOffset(LOCAL_X_END / 2, z), getYWithOffset(1), this.getZWithOffset(LOCAL_X_END / 2, z));
-                if (box.isVecInside(blockPos) && !world.getBlockState(blockPos.down()).isAir()) {
-                    ChestMinecartEntity chestMinecartEntity = new ChestMinecartEntity(world.getWorld(), ((float) blockPos.getX() + 0.5F), ((float) blockPos.getY() + 0.5F), ((float) blockPos.getZ() + 0.5F));
+            if (random.nextFloat() < spawnRate) {
+                this.moveCursor(cursor, LOCAL_X_END / 2, 1, z);
+                if (box.isVecInside(cursor) && !world.getBlockState(below.setPos(cursor).move(Direction.DOWN)).isAir()) {
+                    ChestMinecartEntity chestMinecartEntity = new ChestMinecartEntity(world.getWorld(), ((float) cursor.getX() + 0.5F), ((float) cursor.getY() + 0.5F), ((float) cursor.getZ() + 0.5F));
                     chestMinecartEntity.setLootTable(lootTableId, random.nextLong());
                     world.addEntity(chestMinecartEntity);
+                    this.entitiesSpawned++;
                 }
             }
         }
     }
 
     private void generateTntCarts(ISeedReader world, MutableBoundingBox box, Random random) {
+        BlockPos.Mutable cursor = new BlockPos.Mutable();
+        BlockPos.Mutable below = new BlockPos.Mutable();
         for (int z = 0; z <= LOCAL_Z_END; z++) {
             if (random.nextInt(400) == 0) {
-                BlockPos blockPos = new BlockPos(this.getXWithOffset(LOCAL_X_END / 2, z), getYWithOffset(1), this.getZWithOffset(LOCAL_X_END / 2, z));
-                if (box.isVecInside(blockPos) && !world.getBlockState(blockPos.down()).isAir()) {
-                    TNTMinecartEntity tntMinecartEntity = new TNTMinecartEntity(world.getWorld(), ((float) blockPos.getX() + 0.5F), ((float) blockPos.getY() + 0.5F), ((float) blockPos.getZ() + 0.5F));
+                this.moveCursor(cursor, LOCAL_X_END / 2, 1, z);
+                if (box.isVecInside(cursor) && !world.getBlockState(below.setPos(cursor).move(Direction.DOWN)).isAir()) {
+                    TNTMinecartEntity tntMinecartEntity = new TNTMinecartEntity(world.getWorld(), ((float) cursor.getX() + 0.5F), ((float) cursor.getY() + 0.5F), ((float) cursor.getZ() + 0.5F));
                     world.addEntity(tntMinecartEntity);
+                    this.entitiesSpawned++;
                 }
             }
         }
@@ -393,11 +458,13 @@ public class BigTunnel extends MineshaftPiece {
 
     private void generateLanterns(ISeedReader world, MutableBoundingBox box, Random random) {
         BlockState LANTERN = Blocks.LANTERN.getDefaultState().with(LanternBlock.HANGING, true);
+        BlockPos.Mutable cursor = new BlockPos.Mutable();
+        double spawnRate = ConfigSnapshot.get().lanternSpawnRate;
         for (int z = 0; z <= LOCAL_Z_END; z++) {
             for (int x = 3; x <= LOCAL_X_END - 3; x++) {
-                if (random.nextFloat() < Configuration.spawnRates.lanternSpawnRate.get()) {
-                    if (!this.getBlockStateFromPos(world, x, LOCAL_Y_END, z, box).isAir()) {
-                        this.setBlockState(world, LANTERN, x, LOCAL_Y_END - 1, z, box);
+                if (random.nextFloat() < spawnRate) {
+                    if (!this.getBlockStateFromPos(world, cursor, x, LOCAL_Y_END, z, box).isAir()) {
+                        this.setBlockState(world, cursor, LANTERN, x, LOCAL_Y_END - 1, z, box);
                         z += 20;
                     }
                 }
@@ -406,7 +473,7 @@ public class BigTunnel extends MineshaftPiece {
     }
 
     private void generateCobwebs(ISeedReader world, MutableBoundingBox box, Random random) {
-        float chance = Configuration.spawnRates.cobwebSpawnRate.get().floatValue();
+        float chance = (float) ConfigSnapshot.get().cobwebSpawnRate;
         smallSupports.forEach(z -> {
             this.chanceReplaceAir(world, box, random, chance, 2, 3, z - 1, LOCAL_X_END - 2, 4, z + 1, Blocks.COBWEB.getDefaultState());
             this.chanceReplaceAir(world, box, random, chance, 3, 5, z, LOCAL_X_END - 3, 5, z, Blocks.COBWEB.getDefaultState());
@@ -540,11 +607,12 @@ public class BigTunnel extends MineshaftPiece {
         }
     }
 
-    private void buildSideRoomsLeft(StructurePiece structurePiece, List<StructurePiece> list, Random random, Direction direction, int pieceLen) {
+    private void buildSideRoomsLeft(StructurePiece structurePiece, List<StructurePiece> list, Random random, Direction direction, int pieceLen, int start) {
         Direction nextPieceDirection;
         StructurePiece newPiece;
-        for (int n = 0; n < (pieceLen - 1) - 10; n++) {
-            if (random.nextFloat() < Configuration.spawnRates.workstationSpawnRate.get()) {
+        double spawnRate = ConfigSnapshot.get().workstationSpawnRate;
+        for (int n = start; n < (pieceLen - 1) - 10; n++) {
+            if (random.nextFloat() < spawnRate) {
                 switch (direction) {
                     case NORTH:
                     default:
@@ -576,16 +644,21 @@ public class BigTunnel extends MineshaftPiece {
                         }
                         break;
                 }
-                n += 10;
+
+                // Resume once the side room has been fully built
+                int next = n + 10 + 1;
+                MineshaftLayoutEngine.schedule(list, () -> buildSideRoomsLeft(structurePiece, list, random, direction, pieceLen, next));
+                return;
             }
         }
     }
 
-    private void buildSideRoomsRight(StructurePiece structurePiece, List<StructurePiece> list, Random random, Direction direction, int pieceLen) {
+    private void buildSideRoomsRight(StructurePiece structurePiece, List<StructurePiece> list, Random random, Direction direction, int pieceLen, int start) {
         Direction nextPieceDirection;
         StructurePiece newPiece;
-        for (int n = 0; n < (pieceLen - 1) - 10; n++) {
-            if (random.nextFloat() < Configuration.spawnRates.workstationSpawnRate.get()) {
+        double spawnRate = ConfigSnapshot.get().workstationSpawnRate;
+        for (int n = start; n < (pieceLen - 1) - 10; n++) {
+            if (random.nextFloat() < spawnRate) {
                 switch (direction) {
                     case NORTH:
                     default:
@@ -617,16 +690,21 @@ public class BigTunnel extends MineshaftPiece {
                         }
                         break;
                 }
-                n += 10;
+
+                // Resume once the side room has been fully built
+                int next = n + 10 + 1;
+                MineshaftLayoutEngine.schedule(list, () -> buildSideRoomsRight(structurePiece, list, random, direction, pieceLen, next));
+                return;
             }
         }
     }
 
-    private void buildSmallShaftsLeft(StructurePiece structurePiece, List<StructurePiece> list, Random random, Direction direction, int pieceLen) {
+    private void buildSmallShaftsLeft(StructurePiece structurePiece, List<StructurePiece> list, Random random, Direction direction, int pieceLen, int start) {
         Direction nextPieceDirection;
         StructurePiece newPiece;
-        for (int n = 0; n < (pieceLen - 1) - 4; n++) {
-            if (random.nextFloat() < Configuration.spawnRates.smallShaftSpawnRate.get()) {
+        double spawnRate = ConfigSnapshot.get().smallShaftSpawnRate;
+        for (int n = start; n < (pieceLen - 1) - 4; n++) {
+            if (random.nextFloat() < spawnRate) {
                 switch (direction) {
                     case NORTH:
                     default:
@@ -659,16 +737,20 @@ public class BigTunnel extends MineshaftPiece {
                         break;
                 }
 
-                n += random.nextInt(7) + 5;
+                // Resume once the small shaft has been fully built
+                int current = n;
+                MineshaftLayoutEngine.schedule(list, () -> buildSmallShaftsLeft(structurePiece, list, random, direction, pieceLen, current + random.nextInt(7) + 5 + 1));
+                return;
             }
         }
     }
 
-    private void buildSmallShaftsRight(StructurePiece structurePiece, List<StructurePiece> list, Random random, Direction direction, int pieceLen) {
+    private void buildSmallShaftsRight(StructurePiece structurePiece, List<StructurePiece> list, Random random, Direction direction, int pieceLen, int start) {
         Direction nextPieceDirection;
         StructurePiece newPiece;
-        for (int n = 5; n < pieceLen; n++) {
-            if (random.nextFloat() < Configuration.spawnRates.smallShaftSpawnRate.get()) {
+        double spawnRate = ConfigSnapshot.get().smallShaftSpawnRate;
+        for (int n = start; n < pieceLen; n++) {
+            if (random.nextFloat() < spawnRate) {
                 switch (direction) {
                     case NORTH:
                     default:
@@ -701,7 +783,10 @@ public class BigTunnel extends MineshaftPiece {
                         break;
                 }
 
-                n += random.nextInt(7) + 5;
+                // Resume once the small shaft has been fully built
+                int current = n;
+                MineshaftLayoutEngine.schedule(list, () -> buildSmallShaftsRight(structurePiece, list, random, direction, pieceLen, current + random.nextInt(7) + 5 + 1));
+                return;
             }
         }
     }
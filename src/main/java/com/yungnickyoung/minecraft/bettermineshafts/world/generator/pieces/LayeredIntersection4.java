@@ -2,6 +2,8 @@ package com.yungnickyoung.minecraft.bettermineshafts.world.generator.pieces;
 
 import com.yungnickyoung.minecraft.bettermineshafts.world.generator.BetterMineshaftGenerator;
 import com.yungnickyoung.minecraft.bettermineshafts.world.generator.BetterMineshaftStructurePieceType;
+import com.yungnickyoung.minecraft.bettermineshafts.world.generator.MineshaftLayoutEngine;
+import com.yungnickyoung.minecraft.bettermineshafts.world.generator.MineshaftPieceList;
 import com.yungnickyoung.minecraft.bettermineshafts.world.generator.MineshaftVariantSettings;
 import net.minecraft.block.Blocks;
 import net.minecraft.block.PoweredRailBlock;
@@ -76,7 +78,7 @@ public class LayeredIntersection4 extends MineshaftPiece {
 
         // The following func call returns null if this new blockbox does not intersect with any pieces in the list.
         // If there is an intersection, the following func call returns the piece that intersects.
-        StructurePiece intersectingPiece = StructurePiece.findIntersecting(list, blockBox);
+        StructurePiece intersectingPiece = MineshaftPieceList.findIntersecting(list, blockBox);
 
         // Thus, this function returns null if blackBox intersects with an existing piece. Otherwise, we return blackbox
         return intersectingPiece != null ? null : blockBox;
@@ -92,93 +94,101 @@ public class LayeredIntersection4 extends MineshaftPiece {
         switch (direction) {
             case NORTH:
             default:
-                BetterMineshaftGenerator.generateAndAddSmallTunnelPiece(structurePiece, list, random, this.boundingBox.minX + 1, this.boundingBox.minY + 3, this.boundingBox.minZ - 1, Direction.NORTH, chainLength);
-                BetterMineshaftGenerator.generateAndAddSmallTunnelPiece(structurePiece, list, random, this.boundingBox.maxX + 1, this.boundingBox.minY + 3, this.boundingBox.maxZ - 5, Direction.EAST, chainLength);
-                BetterMineshaftGenerator.generateAndAddSmallTunnelPiece(structurePiece, list, random, this.boundingBox.minX - 1, this.boundingBox.minY + 3, this.boundingBox.maxZ - 1, Direction.WEST, chainLength);
+                MineshaftLayoutEngine.sequence(list,
+                    () -> BetterMineshaftGenerator.generateAndAddSmallTunnelPiece(structurePiece, list, random, this.boundingBox.minX + 1, this.boundingBox.minY + 3, this.boundingBox.minZ - 1, Direction.NORTH, chainLength),
+                    () -> BetterMineshaftGenerator.generateAndAddSmallTunnelPiece(structurePiece, list, random, this.boundingBox.maxX + 1, this.boundingBox.minY + 3, this.boundingBox.maxZ - 5, Direction.EAST, chainLength),
+                    () -> BetterMineshaftGenerator.generateAndAddSmallTunnelPiece(structurePiece, list, random, this.boundingBox.minX - 1, this.boundingBox.minY + 3, this.boundingBox.maxZ - 1, Direction.WEST, chainLength));
                 break;
             case SOUTH:
-                BetterMineshaftGenerator.generateAndAddSmallTunnelPiece(structurePiece, list, random, this.boundingBox.maxX - 1, this.boundingBox.minY + 3, this.boundingBox.maxZ + 1, Direction.SOUTH, chainLength);
-                BetterMineshaftGenerator.generateAndAddSmallTunnelPiece(structurePiece, list, random, this.boundingBox.maxX + 1, this.boundingBox.minY + 3, this.boundingBox.minZ + 1, Direction.EAST, chainLength);
-                BetterMineshaftGenerator.generateAndAddSmallTunnelPiece(structurePiece, list, random, this.boundingBox.minX - 1, this.boundingBox.minY + 3, this.boundingBox.minZ + 5, Direction.WEST, chainLength);
+                MineshaftLayoutEngine.sequence(list,
+                    () -> BetterMineshaftGenerator.generateAndAddSmallTunnelPiece(structurePiece, list, random, this.boundingBox.maxX - 1, this.boundingBox.minY + 3, this.boundingBox.maxZ + 1, Direction.SOUTH, chainLength),
+                    () -> BetterMineshaftGenerator.generateAndAddSmallTunnelPiece(structurePiece, list, random, this.boundingBox.maxX + 1, this.boundingBox.minY + 3, this.boundingBox.minZ + 1, Direction.EAST, chainLength),
+                    () -> BetterMineshaftGenerator.generateAndAddSmallTunnelPiece(structurePiece, list, random, this.boundingBox.minX - 1, this.boundingBox.minY + 3, this.boundingBox.minZ + 5, Direction.WEST, chainLength));
                 break;
             case WEST:
-                BetterMineshaftGenerator.generateAndAddSmallTunnelPiece(structurePiece, list, random, this.boundingBox.minX - 1, this.boundingBox.minY + 3, this.boundingBox.maxZ, Direction.WEST, chainLength);
-                BetterMineshaftGenerator.generateAndAddSmallTunnelPiece(structurePiece, list, random, this.boundingBox.maxX - 5, this.boundingBox.minY + 3, this.boundingBox.minZ - 1, Direction.NORTH, chainLength);
-                BetterMineshaftGenerator.generateAndAddSmallTunnelPiece(structurePiece, list, random, this.boundingBox.maxX - 1, this.boundingBox.minY + 3, this.boundingBox.maxZ + 1, Direction.SOUTH, chainLength);
+                MineshaftLayoutEngine.sequence(list,
+                    () -> BetterMineshaftGenerator.generateAndAddSmallTunnelPiece(structurePiece, list, random, this.boundingBox.minX - 1, this.boundingBox.minY + 3, this.boundingBox.maxZ, Direction.WEST, chainLength),
+                    () -> BetterMineshaftGenerator.generateAndAddSmallTunnelPiece(structurePiece, list, random, this.boundingBox.maxX - 5, this.boundingBox.minY + 3, this.boundingBox.minZ - 1, Direction.NORTH, chainLength),
+                    () -> BetterMineshaftGenerator.generateAndAddSmallTunnelPiece(structurePiece, list, random, this.boundingBox.maxX - 1, this.boundingBox.minY + 3, this.boundingBox.maxZ + 1, Direction.SOUTH, chainLength));
                 break;
             case EAST:
-                BetterMineshaftGenerator.generateAndAddSmallTunnelPiece(structurePiece, list, random, this.boundingBox.maxX + 1, this.boundingBox.minY + 3, this.boundingBox.minZ + 1, Direction.EAST, chainLength);
-                BetterMineshaftGenerator.generateAndAddSmallTunnelPiece(structurePiece, list, random, this.boundingBox.minX + 5, this.boundingBox.minY + 3, this.boundingBox.maxZ + 1, Direction.SOUTH, chainLength);
-                BetterMineshaftGenerator.generateAndAddSmallTunnelPiece(structurePiece, list, random, this.boundingBox.minX + 1, this.boundingBox.minY + 3, this.boundingBox.minZ - 1, Direction.NORTH, chainLength);
+                MineshaftLayoutEngine.sequence(list,
+                    () -> BetterMineshaftGenerator.generateAndAddSmallTunnelPiece(structurePiece, list, random, this.boundingBox.maxX + 1, this.boundingBox.minY + 3, this.boundingBox.minZ + 1, Direction.EAST, chainLength),
+                    () -> BetterMineshaftGenerator.generateAndAddSmallTunnelPiece(structurePiece, list, random, this.boundingBox.minX + 5, this.boundingBox.minY + 3, this.boundingBox.maxZ + 1, Direction.SOUTH, chainLength),
+                    () -> BetterMineshaftGenerator.generateAndAddSmallTunnelPiece(structurePiece, list, random, this.boundingBox.minX + 1, this.boundingBox.minY + 3, this.boundingBox.minZ - 1, Direction.NORTH, chainLength));
         }
     }
 
     @Override
     @ParametersAreNonnullByDefault
-    public boolean func_230383_a_(ISeedReader world, StructureManager structureManager, ChunkGenerator generator, Random random, MutableBoundingBox box, ChunkPos pos, BlockPos blockPos) {
+    protected boolean generate(ISeedReader world, StructureManager structureManager, ChunkGenerator generator, Random random, MutableBoundingBox box, ChunkPos pos, BlockPos blockPos) {
         // Don't spawn if liquid in this box or if in ocean biome
         if (this.isLiquidInStructureBoundingBox(world, box)) return false;
-        if (this.isInOcean(world, 0, 0) || this.isInOcean(world, LOCAL_X_END, LOCAL_Z_END)) return false;
+        if (this.isInOcean(world, 0, 0, LOCAL_X_END, LOCAL_Z_END)) return false;
 
+        this.getVoxelProgram("layered_intersection_4", this::defineProgram).run(this, world, box, random);
+
+        // Decorations
+        this.addBiomeDecorations(world, box, random, 0, 0, 0, LOCAL_X_END, LOCAL_Y_END - 1, LOCAL_Z_END);
+        this.addVines(world, box, random, settings.vineChance, 1, 0, 1, LOCAL_X_END - 1, LOCAL_Y_END, LOCAL_Z_END - 1);
+
+        return true;
+    }
+
+    private void defineProgram(VoxelProgram.Builder program) {
         // Randomize blocks
-        this.chanceReplaceNonAir(world, box, random, settings.replacementRate, 0, 0, 0, LOCAL_X_END, LOCAL_Y_END, LOCAL_Z_END, getMainSelector());
+        program.chanceReplaceNonAir(settings.replacementRate, 0, 0, 0, LOCAL_X_END, LOCAL_Y_END, LOCAL_Z_END, getMainSelector());
 
         // Randomize floor
-        this.chanceReplaceNonAir(world, box, random, settings.replacementRate, 0, 0, 0, LOCAL_X_END, 0, LOCAL_Z_END, getFloorSelector());
+        program.chanceReplaceNonAir(settings.replacementRate, 0, 0, 0, LOCAL_X_END, 0, LOCAL_Z_END, getFloorSelector());
 
         // Fill with air
-        this.fill(world, box, 2, 1, 2, 4, 1, 4, CAVE_AIR);
-        this.fill(world, box, 2, 2, 1, 4, 2, 5, CAVE_AIR);
-        this.fill(world, box, 2, 3, 0, 4, 6, 6, CAVE_AIR);
-        this.fill(world, box, 0, 3, 2, 6, 6, 4, CAVE_AIR);
+        program.fill(2, 1, 2, 4, 1, 4, CAVE_AIR);
+        program.fill(2, 2, 1, 4, 2, 5, CAVE_AIR);
+        program.fill(2, 3, 0, 4, 6, 6, CAVE_AIR);
+        program.fill(0, 3, 2, 6, 6, 4, CAVE_AIR);
 
         // Fill in any air in floor with main block
-        this.replaceNonAir(world, box, 2, 0, 0, 4, 2, LOCAL_Z_END, getMainBlock());
+        program.replaceNonAir(2, 0, 0, 4, 2, LOCAL_Z_END, getMainBlock());
 
         // Sides for walking on
-        this.fill(world, box, 2, 2, 0, 2, 3, 1, getMainBlock());
-        this.chanceReplaceNonAir(world, box, random, .1f, 2, 2, 0, 2, 3, 1, getBrickSelector());
-        this.fill(world, box, 4, 2, 0, 4, 3, 1, getMainBlock());
-        this.chanceReplaceNonAir(world, box, random, .1f, 4, 2, 0, 4, 3, 1, getBrickSelector());
-        this.fill(world, box, 2, 2, 5, 2, 3, 6, getMainBlock());
-        this.chanceReplaceNonAir(world, box, random, .1f, 2, 2, 5, 2, 3, 6, getBrickSelector());
-        this.fill(world, box, 4, 2, 5, 4, 3, 6, getMainBlock());
-        this.chanceReplaceNonAir(world, box, random, .1f, 4, 2, 5, 4, 3, 6, getBrickSelector());
+        program.fill(2, 2, 0, 2, 3, 1, getMainBlock());
+        program.chanceReplaceNonAir(.1f, 2, 2, 0, 2, 3, 1, getBrickSelector());
+        program.fill(4, 2, 0, 4, 3, 1, getMainBlock());
+        program.chanceReplaceNonAir(.1f, 4, 2, 0, 4, 3, 1, getBrickSelector());
+        program.fill(2, 2, 5, 2, 3, 6, getMainBlock());
+        program.chanceReplaceNonAir(.1f, 2, 2, 5, 2, 3, 6, getBrickSelector());
+        program.fill(4, 2, 5, 4, 3, 6, getMainBlock());
+        program.chanceReplaceNonAir(.1f, 4, 2, 5, 4, 3, 6, getBrickSelector());
 
         // Bottom rails
-        this.chanceAddBlock(world, random, .5f, Blocks.RAIL.getDefaultState().with(RailBlock.SHAPE, RailShape.ASCENDING_SOUTH), 3, 3, 0, box);
-        this.chanceAddBlock(world, random, .5f, Blocks.RAIL.getDefaultState().with(RailBlock.SHAPE, RailShape.ASCENDING_SOUTH), 3, 2, 1, box);
-        this.chanceAddBlock(world, random, .5f, Blocks.RAIL.getDefaultState().with(RailBlock.SHAPE, RailShape.ASCENDING_SOUTH), 3, 1, 2, box);
-        this.chanceAddBlock(world, random, .5f, Blocks.POWERED_RAIL.getDefaultState().with(PoweredRailBlock.SHAPE, RailShape.NORTH_SOUTH).with(PoweredRailBlock.POWERED, true), 3, 1, 3, box);
-        this.chanceAddBlock(world, random, .5f, Blocks.RAIL.getDefaultState().with(RailBlock.SHAPE, RailShape.ASCENDING_NORTH), 3, 1, 4, box);
-        this.chanceAddBlock(world, random, .5f, Blocks.RAIL.getDefaultState().with(RailBlock.SHAPE, RailShape.ASCENDING_NORTH), 3, 2, 5, box);
-        this.chanceAddBlock(world, random, .5f, Blocks.RAIL.getDefaultState().with(RailBlock.SHAPE, RailShape.ASCENDING_NORTH), 3, 3, 6, box);
+        program.chanceAddBlock(.5f, Blocks.RAIL.getDefaultState().with(RailBlock.SHAPE, RailShape.ASCENDING_SOUTH), 3, 3, 0);
+        program.chanceAddBlock(.5f, Blocks.RAIL.getDefaultState().with(RailBlock.SHAPE, RailShape.ASCENDING_SOUTH), 3, 2, 1);
+        program.chanceAddBlock(.5f, Blocks.RAIL.getDefaultState().with(RailBlock.SHAPE, RailShape.ASCENDING_SOUTH), 3, 1, 2);
+        program.chanceAddBlock(.5f, Blocks.POWERED_RAIL.getDefaultState().with(PoweredRailBlock.SHAPE, RailShape.NORTH_SOUTH).with(PoweredRailBlock.POWERED, true), 3, 1, 3);
+        program.chanceAddBlock(.5f, Blocks.RAIL.getDefaultState().with(RailBlock.SHAPE, RailShape.ASCENDING_NORTH), 3, 1, 4);
+        program.chanceAddBlock(.5f, Blocks.RAIL.getDefaultState().with(RailBlock.SHAPE, RailShape.ASCENDING_NORTH), 3, 2, 5);
+        program.chanceAddBlock(.5f, Blocks.RAIL.getDefaultState().with(RailBlock.SHAPE, RailShape.ASCENDING_NORTH), 3, 3, 6);
 
         // Ensure solid block is below each rail
-        this.setBlockState(world, getMainBlock(), 3, 2, 0, box);
-        this.setBlockState(world, getMainBlock(), 3, 1, 1, box);
-        this.setBlockState(world, getMainBlock(), 3, 0, 2, box);
-        this.setBlockState(world, getMainBlock(), 3, 0, 3, box);
-        this.setBlockState(world, getMainBlock(), 3, 0, 4, box);
-        this.setBlockState(world, getMainBlock(), 3, 1, 5, box);
-        this.setBlockState(world, getMainBlock(), 3, 2, 6, box);
+        program.setBlockState(getMainBlock(), 3, 2, 0);
+        program.setBlockState(getMainBlock(), 3, 1, 1);
+        program.setBlockState(getMainBlock(), 3, 0, 2);
+        program.setBlockState(getMainBlock(), 3, 0, 3);
+        program.setBlockState(getMainBlock(), 3, 0, 4);
+        program.setBlockState(getMainBlock(), 3, 1, 5);
+        program.setBlockState(getMainBlock(), 3, 2, 6);
 
         // Top wood
-        this.fill(world, box, 0, 3, 2, 1, 3, 4, getMainBlock());
-        this.fill(world, box, 2, 4, 2, 4, 4, 4, getMainBlock());
-        this.fill(world, box, 5, 3, 2, 6, 3, 4, getMainBlock());
+        program.fill(0, 3, 2, 1, 3, 4, getMainBlock());
+        program.fill(2, 4, 2, 4, 4, 4, getMainBlock());
+        program.fill(5, 3, 2, 6, 3, 4, getMainBlock());
 
         // Top rails
-        this.chanceAddBlock(world, random, .5f, Blocks.POWERED_RAIL.getDefaultState().with(PoweredRailBlock.SHAPE, RailShape.EAST_WEST).with(PoweredRailBlock.POWERED, true), 0, 4, 3, box);
-        this.chanceAddBlock(world, random, .5f, Blocks.RAIL.getDefaultState().with(RailBlock.SHAPE, RailShape.ASCENDING_EAST), 1, 4, 3, box);
-        this.chanceFill(world, box, random, .5f, 2, 5, 3, 4, 5, 3, Blocks.RAIL.getDefaultState().with(RailBlock.SHAPE, RailShape.EAST_WEST));
-        this.chanceAddBlock(world, random, .5f, Blocks.RAIL.getDefaultState().with(RailBlock.SHAPE, RailShape.ASCENDING_WEST), 5, 4, 3, box);
-        this.chanceAddBlock(world, random, .5f, Blocks.POWERED_RAIL.getDefaultState().with(PoweredRailBlock.SHAPE, RailShape.EAST_WEST).with(PoweredRailBlock.POWERED, true), 6, 4, 3, box);
-
-        // Decorations
-        this.addBiomeDecorations(world, box, random, 0, 0, 0, LOCAL_X_END, LOCAL_Y_END - 1, LOCAL_Z_END);
-        this.addVines(world, box, random, settings.vineChance, 1, 0, 1, LOCAL_X_END - 1, LOCAL_Y_END, LOCAL_Z_END - 1);
-
-        return true;
+        program.chanceAddBlock(.5f, Blocks.POWERED_RAIL.getDefaultState().with(PoweredRailBlock.SHAPE, RailShape.EAST_WEST).with(PoweredRailBlock.POWERED, true), 0, 4, 3);
+        program.chanceAddBlock(.5f, Blocks.RAIL.getDefaultState().with(RailBlock.SHAPE, RailShape.ASCENDING_EAST), 1, 4, 3);
+        program.chanceFill(.5f, 2, 5, 3, 4, 5, 3, Blocks.RAIL.getDefaultState().with(RailBlock.SHAPE, RailShape.EAST_WEST));
+        program.chanceAddBlock(.5f, Blocks.RAIL.getDefaultState().with(RailBlock.SHAPE, RailShape.ASCENDING_WEST), 5, 4, 3);
+        program.chanceAddBlock(.5f, Blocks.POWERED_RAIL.getDefaultState().with(PoweredRailBlock.SHAPE, RailShape.EAST_WEST).with(PoweredRailBlock.POWERED, true), 6, 4, 3);
     }
 }
@@ -2,35 +2,52 @@ package com.yungnickyoung.minecraft.bettermineshafts.world.generator.pieces;
 
 import com.google.common.collect.ImmutableSet;
 import com.yungnickyoung.minecraft.bettermineshafts.BetterMineshafts;
+import com.yungnickyoung.minecraft.bettermineshafts.world.generator.CompiledBlockSetSelector;
+import com.yungnickyoung.minecraft.bettermineshafts.world.generator.MineshaftMetrics;
 import com.yungnickyoung.minecraft.bettermineshafts.world.generator.MineshaftVariantSettings;
 import com.yungnickyoung.minecraft.bettermineshafts.world.generator.MineshaftVariants;
-import com.yungnickyoung.minecraft.yungsapi.world.BlockSetSelector;
+import com.yungnickyoung.minecraft.bettermineshafts.world.generator.jfr.MineshaftEvents;
 import net.minecraft.block.*;
 import net.minecraft.block.material.Material;
+import net.minecraft.fluid.FluidState;
 import net.minecraft.nbt.CompoundNBT;
 import net.minecraft.tileentity.BarrelTileEntity;
 import net.minecraft.tileentity.LockableLootTileEntity;
 import net.minecraft.tileentity.TileEntity;
 import net.minecraft.util.Direction;
+import net.minecraft.util.Mirror;
 import net.minecraft.util.RegistryKey;
 import net.minecraft.util.ResourceLocation;
+import net.minecraft.util.Rotation;
 import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
 import net.minecraft.util.math.MutableBoundingBox;
 import net.minecraft.util.registry.Registry;
 import net.minecraft.world.IBlockReader;
 import net.minecraft.world.ISeedReader;
 import net.minecraft.world.biome.Biome;
+import net.minecraft.world.chunk.ChunkSection;
+import net.minecraft.world.gen.ChunkGenerator;
 import net.minecraft.world.gen.feature.structure.IStructurePieceType;
+import net.minecraft.world.gen.feature.structure.StructureManager;
 import net.minecraft.world.gen.feature.structure.StructurePiece;
 import net.minecraftforge.common.BiomeDictionary;
 
+import javax.annotation.ParametersAreNonnullByDefault;
 import java.util.List;
 import java.util.Random;
 import java.util.Set;
+import java.util.function.Consumer;
 
 public abstract class MineshaftPiece extends StructurePiece {
     protected MineshaftVariantSettings settings;
     protected int chainLength;
+    private Boolean inOcean; // Null until the first time this piece is placed
+    protected final MineshaftMetrics.PieceMetrics metrics = MineshaftMetrics.forPiece(this.getClass());
+
+    // Blocks placed and entities spawned by the current call to func_230383_a_, reported to JFR
+    protected int voxelsPlaced;
+    protected int entitiesSpawned;
 
     protected static final BlockState CAVE_AIR = Blocks.CAVE_AIR.getDefaultState();
     private static final Set<Material> LIQUIDS = ImmutableSet.of(Material.LAVA, Material.WATER);
@@ -43,15 +60,25 @@ public abstract class MineshaftPiece extends StructurePiece {
 
     public MineshaftPiece(IStructurePieceType structurePieceType, CompoundNBT compoundTag) {
         super(structurePieceType, compoundTag);
-        int index = compoundTag.getInt("MST");
-        this.settings = index < MineshaftVariants.get().getVariants().size() && index >= 0
-            ? MineshaftVariants.get().getVariants().get(index)
-            : MineshaftVariants.get().getDefault();
+        if (compoundTag.contains("MSV", 8)) {
+            this.settings = MineshaftVariants.get().getVariantById(compoundTag.getString("MSV"));
+        } else {
+            // Pieces saved before variant IDs existed store the variant's index in the list instead
+            int index = compoundTag.getInt("MST");
+            this.settings = index < MineshaftVariants.get().getVariants().size() && index >= 0
+                ? MineshaftVariants.get().getVariants().get(index)
+                : MineshaftVariants.get().getDefault();
+        }
+        if (compoundTag.contains("inOcean")) {
+            this.inOcean = compoundTag.getBoolean("inOcean");
+        }
     }
 
     protected void toNbt(CompoundNBT tag) {
-        int index = MineshaftVariants.get().getVariants().indexOf(this.settings);
-        tag.putInt("MST", index);
+        tag.putString("MSV", this.settings.id);
+        if (this.inOcean != null) {
+            tag.putBoolean("inOcean", this.inOcean);
+        }
     }
 
     public void setBoundingBox(MutableBoundingBox boundingBox) {
@@ -62,6 +89,18 @@ public abstract class MineshaftPiece extends StructurePiece {
         return settings;
     }
 
+    public MineshaftMetrics.PieceMetrics getMetrics() {
+        return metrics;
+    }
+
+    public int getVoxelsPlaced() {
+        return voxelsPlaced;
+    }
+
+    public int getEntitiesSpawned() {
+        return entitiesSpawned;
+    }
+
     /**
      * Adds new pieces to the list passed in.
      * Also resolves variables local to this piece like support positions.
@@ -71,24 +110,48 @@ public abstract class MineshaftPiece extends StructurePiece {
     public void buildComponent(StructurePiece structurePiece, List<StructurePiece> list, Random random) {
     }
 
+    /**
+     * Places this piece's blocks within the given box, recording how long it took.
+     * Pieces implement {@link #generate} instead.
+     */
+    @Override
+    @ParametersAreNonnullByDefault
+    public final boolean func_230383_a_(ISeedReader world, StructureManager structureManager, ChunkGenerator generator, Random random, MutableBoundingBox box, ChunkPos pos, BlockPos blockPos) {
+        Object event = MineshaftEvents.beginPlacement();
+        this.voxelsPlaced = 0;
+        this.entitiesSpawned = 0;
+        long start = System.nanoTime();
+        boolean placed = this.generate(world, structureManager, generator, random, box, pos, blockPos);
+        this.metrics.placeNanos.add(System.nanoTime() - start);
+        this.metrics.placements.increment();
+        MineshaftEvents.endPlacement(event, this, pos, placed);
+        return placed;
+    }
+
+    /**
+     * Places this piece's blocks within the given box.
+     * @return false if the piece couldn't be placed, in which case it is removed from the structure
+     */
+    protected abstract boolean generate(ISeedReader world, StructureManager structureManager, ChunkGenerator generator, Random random, MutableBoundingBox box, ChunkPos pos, BlockPos blockPos);
+
     /* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
      *                                     BLOCK SELECTORS                                     *
      * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
 
-    protected BlockSetSelector getMainSelector() {
-        return settings.mainSelector;
+    protected CompiledBlockSetSelector getMainSelector() {
+        return settings.getCompiledMainSelector();
     }
 
-    protected BlockSetSelector getFloorSelector() {
-        return settings.floorSelector;
+    protected CompiledBlockSetSelector getFloorSelector() {
+        return settings.getCompiledFloorSelector();
     }
 
-    protected BlockSetSelector getBrickSelector() {
-        return settings.brickSelector;
+    protected CompiledBlockSetSelector getBrickSelector() {
+        return settings.getCompiledBrickSelector();
     }
 
-    protected BlockSetSelector getLegSelector() {
-        return settings.legSelector;
+    protected CompiledBlockSetSelector getLegSelector() {
+        return settings.getCompiledLegSelector();
     }
 
     /* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
@@ -130,32 +193,43 @@ public abstract class MineshaftPiece extends StructurePiece {
     protected void addBarrel(ISeedReader world, MutableBoundingBox boundingBox, Random random, BlockPos pos, ResourceLocation lootTableId) {
         if (boundingBox.isVecInside(pos) && world.getBlockState(pos).getBlock() != Blocks.BARREL) {
             world.setBlockState(pos, Blocks.BARREL.getDefaultState().with(BarrelBlock.PROPERTY_FACING, Direction.UP), 2);
+            this.voxelsPlaced++;
             LockableLootTileEntity.setLootTable(world, random, pos, lootTableId);
         }
     }
 
     protected void addBarrel(ISeedReader world, MutableBoundingBox boundingBox, Random random, int x, int y, int z, ResourceLocation lootTableId) {
-        BlockPos blockPos = new BlockPos(this.getXWithOffset(x, z), this.getYWithOffset(y), this.getZWithOffset(x, z));
-        this.addBarrel(world, boundingBox, random, blockPos, lootTableId);
+        this.addBarrel(world, boundingBox, random, this.moveCursor(new BlockPos.Mutable(), x, y, z), lootTableId);
     }
 
     /**
      * Randomly add vines with a given chance in a given area, facing the specified direction.
      */
     protected void addVines(ISeedReader world, MutableBoundingBox boundingBox, Direction facing, Random random, float chance, int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+        // Positions outside the box can still roll for a vine if the block they face is inside the box,
+        // so the area is extended by one block opposite the facing direction.
+        MutableBoundingBox localBox = this.getLocalBox(boundingBox);
+        int startX = Math.max(minX, localBox.minX - Math.max(facing.getXOffset(), 0));
+        int endX = Math.min(maxX, localBox.maxX - Math.min(facing.getXOffset(), 0));
+        int startY = Math.max(minY, localBox.minY - Math.max(facing.getYOffset(), 0));
+        int endY = Math.min(maxY, localBox.maxY - Math.min(facing.getYOffset(), 0));
+        int startZ = Math.max(minZ, localBox.minZ - Math.max(facing.getZOffset(), 0));
+        int endZ = Math.min(maxZ, localBox.maxZ - Math.min(facing.getZOffset(), 0));
+
+        BlockPos.Mutable cursor = new BlockPos.Mutable();
         BlockPos.Mutable mutable = new BlockPos.Mutable();
-        for (int x = minX; x <= maxX; x++) {
-            for (int y = minY; y <= maxY; y++) {
-                for (int z = minZ; z <= maxZ; z++) {
-                    mutable.setPos(this.getXWithOffset(x, z), this.getYWithOffset(y), this.getZWithOffset(x, z)).move(facing);
-                    BlockState nextBlock = this.getBlockStateFromPos(world, x + facing.getXOffset(), y + facing.getYOffset(), z + facing.getZOffset(), boundingBox);
+        for (int x = startX; x <= endX; x++) {
+            for (int y = startY; y <= endY; y++) {
+                for (int z = startZ; z <= endZ; z++) {
+                    this.moveCursor(mutable, x, y, z).move(facing);
+                    BlockState nextBlock = this.getBlockStateFromPos(world, cursor, x + facing.getXOffset(), y + facing.getYOffset(), z + facing.getZOffset(), boundingBox);
                     if (
-                        this.getBlockStateFromPos(world, x, y, z, boundingBox).isAir()
+                        this.getBlockStateFromPos(world, cursor, x, y, z, boundingBox).isAir()
                             && Block.doesSideFillSquare(nextBlock.getCollisionShape(world, mutable), facing.getOpposite())
                             && nextBlock.getBlock().getDefaultState() != Blocks.LADDER.getDefaultState()
                             && random.nextFloat() < chance
                     ) {
-                        this.setBlockState(world, Blocks.VINE.getDefaultState().with(VineBlock.getPropertyFor(facing.getAxis() == Direction.Axis.X ? facing : facing.getOpposite()), true), x, y, z, boundingBox);
+                        this.setBlockState(world, cursor, Blocks.VINE.getDefaultState().with(VineBlock.getPropertyFor(facing.getAxis() == Direction.Axis.X ? facing : facing.getOpposite()), true), x, y, z, boundingBox);
                     }
                 }
             }
@@ -176,18 +250,28 @@ public abstract class MineshaftPiece extends StructurePiece {
      * Add decorations specific to a biome variant, such as snow.
      */
     protected void addBiomeDecorations(ISeedReader world, MutableBoundingBox box, Random random, int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+        MutableBoundingBox localBox = this.getLocalBox(box);
+        BlockPos.Mutable cursor = new BlockPos.Mutable();
+        BlockPos.Mutable below = new BlockPos.Mutable();
         for (int x = minX; x <= maxX; x++) {
             for (int y = minY; y <= maxY; y++) {
                 for (int z = minZ; z <= maxZ; z++) {
-                    BlockPos blockPos = new BlockPos(this.getXWithOffset(x, z), this.getYWithOffset(y), this.getZWithOffset(x, z));
-                    BlockState state = this.getBlockStateFromPos(world, x, y, z, box);
-                    BlockState stateBelow = this.getBlockStateFromPos(world, x, y - 1, z, box);
+                    // Positions outside the box read as air, so the only thing they do is roll the chances below
+                    if (!isInside(localBox, x, y, z)) {
+                        if (settings.snowChance > 0) random.nextFloat();
+                        if (settings.cactusChance > 0) random.nextFloat();
+                        if (settings.deadBushChance > 0) random.nextFloat();
+                        continue;
+                    }
+
+                    BlockState state = this.getBlockStateFromPos(world, cursor, x, y, z, box);
+                    BlockState stateBelow = this.getBlockStateFromPos(world, below, x, y - 1, z, box);
                     Block blockBelow = stateBelow.getBlock();
 
                     // Snow layers
                     if (settings.snowChance > 0) {
-                        if (random.nextFloat() < settings.snowChance && state == CAVE_AIR && blockBelow != Blocks.ICE && blockBelow != Blocks.PACKED_ICE && blockBelow != Blocks.BARRIER && stateBelow.isSolidSide(world, blockPos.down(), Direction.UP)) {
-                            this.setBlockState(world, Blocks.SNOW.getDefaultState().with(SnowBlock.LAYERS, random.nextInt(2) + 1), x, y, z, box);
+                        if (random.nextFloat() < settings.snowChance && state == CAVE_AIR && blockBelow != Blocks.ICE && blockBelow != Blocks.PACKED_ICE && blockBelow != Blocks.BARRIER && stateBelow.isSolidSide(world, below, Direction.UP)) {
+                            this.setBlockState(world, cursor, Blocks.SNOW.getDefaultState().with(SnowBlock.LAYERS, random.nextInt(2) + 1), x, y, z, box);
                         }
                     }
 
@@ -195,9 +279,9 @@ public abstract class MineshaftPiece extends StructurePiece {
                     if (settings.cactusChance > 0) {
                         if (random.nextFloat() < settings.cactusChance) {
                             if (state == CAVE_AIR && blockBelow == Blocks.SAND) {
-                                this.setBlockState(world, Blocks.CACTUS.getDefaultState().with(CactusBlock.AGE, 0), x, y, z, box);
-                                if (random.nextFloat() < .5f && this.getBlockStateFromPos(world, x, y + 1, z, box) == CAVE_AIR) {
-                                    this.setBlockState(world, Blocks.CACTUS.getDefaultState().with(CactusBlock.AGE, 0), x, y + 1, z, box);
+                                this.setBlockState(world, cursor, Blocks.CACTUS.getDefaultState().with(CactusBlock.AGE, 0), x, y, z, box);
+                                if (random.nextFloat() < .5f && this.getBlockStateFromPos(world, cursor, x, y + 1, z, box) == CAVE_AIR) {
+                                    this.setBlockState(world, cursor, Blocks.CACTUS.getDefaultState().with(CactusBlock.AGE, 0), x, y + 1, z, box);
                                 }
                             }
                         }
@@ -207,7 +291,7 @@ public abstract class MineshaftPiece extends StructurePiece {
                     if (settings.deadBushChance > 0) {
                         if (random.nextFloat() < settings.deadBushChance) {
                             if (state == CAVE_AIR && (blockBelow == Blocks.SAND || blockBelow == Blocks.RED_SAND || blockBelow == Blocks.TERRACOTTA || blockBelow == Blocks.WHITE_TERRACOTTA || blockBelow == Blocks.ORANGE_TERRACOTTA || blockBelow == Blocks.MAGENTA_TERRACOTTA || blockBelow == Blocks.LIGHT_BLUE_TERRACOTTA || blockBelow == Blocks.YELLOW_TERRACOTTA || blockBelow == Blocks.LIME_TERRACOTTA || blockBelow == Blocks.PINK_TERRACOTTA || blockBelow == Blocks.GRAY_TERRACOTTA || blockBelow == Blocks.LIGHT_GRAY_TERRACOTTA || blockBelow == Blocks.CYAN_TERRACOTTA || blockBelow == Blocks.PURPLE_TERRACOTTA || blockBelow == Blocks.BLUE_TERRACOTTA || blockBelow == Blocks.BROWN_TERRACOTTA || blockBelow == Blocks.GREEN_TERRACOTTA || blockBelow == Blocks.RED_TERRACOTTA || blockBelow == Blocks.BLACK_TERRACOTTA || blockBelow == Blocks.DIRT || blockBelow == Blocks.COARSE_DIRT || blockBelow == Blocks.PODZOL)) {
-                                this.setBlockState(world, Blocks.DEAD_BUSH.getDefaultState(), x, y, z, box);
+                                this.setBlockState(world, cursor, Blocks.DEAD_BUSH.getDefaultState(), x, y, z, box);
                             }
                         }
                     }
@@ -217,9 +301,9 @@ public abstract class MineshaftPiece extends StructurePiece {
                         if (state == CAVE_AIR && (blockBelow == Blocks.MYCELIUM || blockBelow == Blocks.DIRT)) {
                             float r = random.nextFloat();
                             if (r < settings.mushroomChance / 2) {
-                                this.setBlockState(world, Blocks.RED_MUSHROOM.getDefaultState(), x, y, z, box);
+                                this.setBlockState(world, cursor, Blocks.RED_MUSHROOM.getDefaultState(), x, y, z, box);
                             } else if (r < settings.mushroomChance) {
-                                this.setBlockState(world, Blocks.BROWN_MUSHROOM.getDefaultState(), x, y, z, box);
+                                this.setBlockState(world, cursor, Blocks.BROWN_MUSHROOM.getDefaultState(), x, y, z, box);
                             }
                         }
                     }
@@ -228,44 +312,51 @@ public abstract class MineshaftPiece extends StructurePiece {
         }
     }
 
-    private BlockSetSelector getLegSelectorForPosition(ISeedReader world, int x, int z) {
-        BlockPos.Mutable mutable = new BlockPos.Mutable(this.getXWithOffset(x, z), this.getYWithOffset(-1), this.getZWithOffset(x, z));
-        BlockState currBlock = world.getBlockState(mutable);
-
+    protected void generateLeg(ISeedReader world, Random random, int x, int z) {
         // If this variant's legs are marked as flammable, we check for lava below. If there's lava, we will use the brick selector for this leg
-        if (settings.flammableLegs) {
-            while (mutable.getY() > 0 && (currBlock.getMaterial() == Material.AIR || LIQUIDS.contains(currBlock.getMaterial()))) {
-                if (currBlock.getMaterial() == Material.LAVA) {
-                    return getBrickSelector();
-                }
-                mutable.move(Direction.DOWN);
-                currBlock = world.getBlockState(mutable);
-            }
-        }
-
-        return getLegSelector();
+        buildLeg(world, random, x, z, getLegSelector(), settings.flammableLegs);
     }
 
-    protected void generateLeg(ISeedReader world, Random random, int x, int z) {
-        BlockSetSelector selector = getLegSelectorForPosition(world, x, z);
-        BlockPos.Mutable mutable = new BlockPos.Mutable(this.getXWithOffset(x, z), this.getYWithOffset(-1), this.getZWithOffset(x, z));
-        BlockState currBlock = world.getBlockState(mutable);
+    protected void generateLegWithSelector(ISeedReader world, Random random, int x, int z, CompiledBlockSetSelector selector) {
+        buildLeg(world, random, x, z, selector, false);
+    }
 
-        while (mutable.getY() > 0 && (currBlock.getMaterial() == Material.AIR || LIQUIDS.contains(currBlock.getMaterial()))) {
-            world.setBlockState(mutable, selector.get(random), 2);
-            mutable.move(Direction.DOWN);
-            currBlock = world.getBlockState(mutable);
+    /**
+     * Builds a leg extending down from just below the given position until it reaches a solid block.
+     * The column is read in a single pass before placing anything, so lava along the leg is detected without a second scan.
+     * Chunk sections with no blocks at all are skipped over entirely.
+     * @param avoidLava whether to use the brick selector instead if there is lava anywhere along the leg
+     */
+    private void buildLeg(ISeedReader world, Random random, int x, int z, CompiledBlockSetSelector selector, boolean avoidLava) {
+        BlockPos.Mutable mutable = this.moveCursor(new BlockPos.Mutable(), x, -1, z);
+        ChunkSection[] sections = world.getChunk(mutable).getSections();
+        int top = mutable.getY();
+
+        // Find the first y below the top that isn't part of the leg
+        int bottom = top;
+        boolean foundLava = false;
+        while (bottom > 0) {
+            int sectionIndex = bottom >> 4;
+            if (sectionIndex < sections.length && (sections[sectionIndex] == null || sections[sectionIndex].isEmpty())) {
+                // Only air left in this section
+                bottom = (sectionIndex << 4) - 1;
+                continue;
+            }
+            Material material = world.getBlockState(mutable.setY(bottom)).getMaterial();
+            if (material != Material.AIR && !LIQUIDS.contains(material)) {
+                break;
+            }
+            foundLava |= material == Material.LAVA;
+            bottom--;
         }
-    }
 
-    protected void generateLegWithSelector(ISeedReader world, Random random, int x, int z, BlockSetSelector selector) {
-        BlockPos.Mutable mutable = new BlockPos.Mutable(this.getXWithOffset(x, z), this.getYWithOffset(-1), this.getZWithOffset(x, z));
-        BlockState currBlock = world.getBlockState(mutable);
+        if (avoidLava && foundLava) {
+            selector = getBrickSelector();
+        }
 
-        while (mutable.getY() > 0 && (currBlock.getMaterial() == Material.AIR || LIQUIDS.contains(currBlock.getMaterial()))) {
-            world.setBlockState(mutable, selector.get(random), 2);
-            mutable.move(Direction.DOWN);
-            currBlock = world.getBlockState(mutable);
+        for (int y = top; y > Math.max(bottom, 0); y--) {
+            world.setBlockState(mutable.setY(y), selector.get(random), 2);
+            this.voxelsPlaced++;
         }
     }
 
@@ -277,10 +368,12 @@ public abstract class MineshaftPiece extends StructurePiece {
      * Replaces each block in the provided area with the provided BlockState.
      */
     protected void fill(ISeedReader world, MutableBoundingBox blockBox, int minX, int minY, int minZ, int maxX, int maxY, int maxZ, BlockState blockState) {
-        for (int x = minX; x <= maxX; ++x) {
-            for (int y = minY; y <= maxY; ++y) {
-                for (int z = minZ; z <= maxZ; ++z) {
-                    this.setBlockState(world, blockState, x, y, z, blockBox);
+        BlockPos.Mutable cursor = new BlockPos.Mutable();
+        MutableBoundingBox area = this.getLocalArea(blockBox, minX, minY, minZ, maxX, maxY, maxZ);
+        for (int x = area.minX; x <= area.maxX; ++x) {
+            for (int y = area.minY; y <= area.maxY; ++y) {
+                for (int z = area.minZ; z <= area.maxZ; ++z) {
+                    this.setBlockState(world, cursor, blockState, x, y, z, blockBox);
                 }
             }
         }
@@ -289,11 +382,16 @@ public abstract class MineshaftPiece extends StructurePiece {
     /**
      * Replaces each block in the provided area with blocks determined by the provided BlockSelector.
      */
-    protected void fill(ISeedReader world, MutableBoundingBox blockBox, Random random, int minX, int minY, int minZ, int maxX, int maxY, int maxZ, BlockSetSelector selector) {
+    protected void fill(ISeedReader world, MutableBoundingBox blockBox, Random random, int minX, int minY, int minZ, int maxX, int maxY, int maxZ, CompiledBlockSetSelector selector) {
+        BlockPos.Mutable cursor = new BlockPos.Mutable();
+        MutableBoundingBox localBox = this.getLocalBox(blockBox);
         for (int x = minX; x <= maxX; ++x) {
             for (int y = minY; y <= maxY; ++y) {
                 for (int z = minZ; z <= maxZ; ++z) {
-                    this.setBlockState(world, selector.get(random), x, y, z, blockBox);
+                    BlockState blockState = selector.get(random);
+                    if (isInside(localBox, x, y, z)) {
+                        this.setBlockState(world, cursor, blockState, x, y, z, blockBox);
+                    }
                 }
             }
         }
@@ -303,12 +401,14 @@ public abstract class MineshaftPiece extends StructurePiece {
      * Replaces each air block in the provided area with the provided BlockState.
      */
     protected void replaceAir(ISeedReader world, MutableBoundingBox blockBox, int minX, int minY, int minZ, int maxX, int maxY, int maxZ, BlockState blockState) {
-        for (int x = minX; x <= maxX; ++x) {
-            for (int y = minY; y <= maxY; ++y) {
-                for (int z = minZ; z <= maxZ; ++z) {
-                    BlockState currState = this.getBlockStateFromPosFixed(world, x, y, z, blockBox);
+        BlockPos.Mutable cursor = new BlockPos.Mutable();
+        MutableBoundingBox area = this.getLocalArea(blockBox, minX, minY, minZ, maxX, maxY, maxZ);
+        for (int x = area.minX; x <= area.maxX; ++x) {
+            for (int y = area.minY; y <= area.maxY; ++y) {
+                for (int z = area.minZ; z <= area.maxZ; ++z) {
+                    BlockState currState = this.getBlockStateFromPosFixed(world, cursor, x, y, z, blockBox);
                     if (currState != null && currState.isAir()) {
-                        this.setBlockState(world, blockState, x, y, z, blockBox);
+                        this.setBlockState(world, cursor, blockState, x, y, z, blockBox);
                     }
                 }
             }
@@ -318,13 +418,15 @@ public abstract class MineshaftPiece extends StructurePiece {
     /**
      * Replaces each air block in the provided area with blocks determined by the provided BlockSelector.
      */
-    protected void replaceAir(ISeedReader world, MutableBoundingBox blockBox, Random random, int minX, int minY, int minZ, int maxX, int maxY, int maxZ, BlockSetSelector selector) {
-        for (int x = minX; x <= maxX; ++x) {
-            for (int y = minY; y <= maxY; ++y) {
-                for (int z = minZ; z <= maxZ; ++z) {
-                    BlockState currState = this.getBlockStateFromPosFixed(world, x, y, z, blockBox);
+    protected void replaceAir(ISeedReader world, MutableBoundingBox blockBox, Random random, int minX, int minY, int minZ, int maxX, int maxY, int maxZ, CompiledBlockSetSelector selector) {
+        BlockPos.Mutable cursor = new BlockPos.Mutable();
+        MutableBoundingBox area = this.getLocalArea(blockBox, minX, minY, minZ, maxX, maxY, maxZ);
+        for (int x = area.minX; x <= area.maxX; ++x) {
+            for (int y = area.minY; y <= area.maxY; ++y) {
+                for (int z = area.minZ; z <= area.maxZ; ++z) {
+                    BlockState currState = this.getBlockStateFromPosFixed(world, cursor, x, y, z, blockBox);
                     if (currState != null && currState.isAir()) {
-                        this.setBlockState(world, selector.get(random), x, y, z, blockBox);
+                        this.setBlockState(world, cursor, selector.get(random), x, y, z, blockBox);
                     }
                 }
             }
@@ -335,12 +437,14 @@ public abstract class MineshaftPiece extends StructurePiece {
      * Replaces each non-air block in the provided area with the provided BlockState.
      */
     protected void replaceNonAir(ISeedReader world, MutableBoundingBox blockBox, int minX, int minY, int minZ, int maxX, int maxY, int maxZ, BlockState blockState) {
-        for (int x = minX; x <= maxX; ++x) {
-            for (int y = minY; y <= maxY; ++y) {
-                for (int z = minZ; z <= maxZ; ++z) {
-                    BlockState currState = this.getBlockStateFromPosFixed(world, x, y, z, blockBox);
+        BlockPos.Mutable cursor = new BlockPos.Mutable();
+        MutableBoundingBox area = this.getLocalArea(blockBox, minX, minY, minZ, maxX, maxY, maxZ);
+        for (int x = area.minX; x <= area.maxX; ++x) {
+            for (int y = area.minY; y <= area.maxY; ++y) {
+                for (int z = area.minZ; z <= area.maxZ; ++z) {
+                    BlockState currState = this.getBlockStateFromPosFixed(world, cursor, x, y, z, blockBox);
                     if (currState != null && !currState.isAir()) {
-                        this.setBlockState(world, blockState, x, y, z, blockBox);
+                        this.setBlockState(world, cursor, blockState, x, y, z, blockBox);
                     }
                 }
             }
@@ -350,13 +454,15 @@ public abstract class MineshaftPiece extends StructurePiece {
     /**
      * Replaces each non-air block in the provided area with blocks determined by the provided BlockSelector.
      */
-    protected void replaceNonAir(ISeedReader world, MutableBoundingBox blockBox, Random random, int minX, int minY, int minZ, int maxX, int maxY, int maxZ, BlockSetSelector selector) {
-        for (int x = minX; x <= maxX; ++x) {
-            for (int y = minY; y <= maxY; ++y) {
-                for (int z = minZ; z <= maxZ; ++z) {
-                    BlockState currState = this.getBlockStateFromPosFixed(world, x, y, z, blockBox);
+    protected void replaceNonAir(ISeedReader world, MutableBoundingBox blockBox, Random random, int minX, int minY, int minZ, int maxX, int maxY, int maxZ, CompiledBlockSetSelector selector) {
+        BlockPos.Mutable cursor = new BlockPos.Mutable();
+        MutableBoundingBox area = this.getLocalArea(blockBox, minX, minY, minZ, maxX, maxY, maxZ);
+        for (int x = area.minX; x <= area.maxX; ++x) {
+            for (int y = area.minY; y <= area.maxY; ++y) {
+                for (int z = area.minZ; z <= area.maxZ; ++z) {
+                    BlockState currState = this.getBlockStateFromPosFixed(world, cursor, x, y, z, blockBox);
                     if (currState != null && !currState.isAir()) {
-                        this.setBlockState(world, selector.get(random), x, y, z, blockBox);
+                        this.setBlockState(world, cursor, selector.get(random), x, y, z, blockBox);
                     }
                 }
             }
@@ -371,11 +477,13 @@ public abstract class MineshaftPiece extends StructurePiece {
      * Has a chance of replacing each block in the provided area with the provided BlockState.
      */
     protected void chanceFill(ISeedReader world, MutableBoundingBox blockBox, Random random, float chance, int minX, int minY, int minZ, int maxX, int maxY, int maxZ, BlockState blockState) {
+        BlockPos.Mutable cursor = new BlockPos.Mutable();
+        MutableBoundingBox localBox = this.getLocalBox(blockBox);
         for (int x = minX; x <= maxX; ++x) {
             for (int y = minY; y <= maxY; ++y) {
                 for (int z = minZ; z <= maxZ; ++z) {
-                    if (random.nextFloat() < chance) {
-                        this.setBlockState(world, blockState, x, y, z, blockBox);
+                    if (random.nextFloat() < chance && isInside(localBox, x, y, z)) {
+                        this.setBlockState(world, cursor, blockState, x, y, z, blockBox);
                     }
                 }
             }
@@ -385,28 +493,36 @@ public abstract class MineshaftPiece extends StructurePiece {
     /**
      * Has a chance of replacing each block in the provided area with a block determined by the provided BlockSelector.
      */
-    protected void chanceFill(ISeedReader world, MutableBoundingBox blockBox, Random random, float chance, int minX, int minY, int minZ, int maxX, int maxY, int maxZ, BlockSetSelector selector) {
+    protected void chanceFill(ISeedReader world, MutableBoundingBox blockBox, Random random, float chance, int minX, int minY, int minZ, int maxX, int maxY, int maxZ, CompiledBlockSetSelector selector) {
+        BlockPos.Mutable cursor = new BlockPos.Mutable();
+        MutableBoundingBox localBox = this.getLocalBox(blockBox);
         for (int x = minX; x <= maxX; ++x) {
             for (int y = minY; y <= maxY; ++y) {
                 for (int z = minZ; z <= maxZ; ++z) {
                     if (random.nextFloat() < chance) {
-                        this.setBlockState(world, selector.get(random), x, y, z, blockBox);
+                        BlockState blockState = selector.get(random);
+                        if (isInside(localBox, x, y, z)) {
+                            this.setBlockState(world, cursor, blockState, x, y, z, blockBox);
+                        }
                     }
                 }
             }
-        }    }
+        }
+    }
 
     /**
      * Has a chance of replacing each air block in the provided area with the provided BlockState.
      */
     protected void chanceReplaceAir(ISeedReader world, MutableBoundingBox blockBox, Random random, float chance, int minX, int minY, int minZ, int maxX, int maxY, int maxZ, BlockState blockState) {
+        BlockPos.Mutable cursor = new BlockPos.Mutable();
+        MutableBoundingBox localBox = this.getLocalBox(blockBox);
         for (int x = minX; x <= maxX; ++x) {
             for (int y = minY; y <= maxY; ++y) {
                 for (int z = minZ; z <= maxZ; ++z) {
-                    if (random.nextFloat() < chance) {
-                        BlockState currState = this.getBlockStateFromPosFixed(world, x, y, z, blockBox);
+                    if (random.nextFloat() < chance && isInside(localBox, x, y, z)) {
+                        BlockState currState = this.getBlockStateFromPosFixed(world, cursor, x, y, z, blockBox);
                         if (currState != null && currState.isAir()) {
-                            this.setBlockState(world, blockState, x, y, z, blockBox);
+                            this.setBlockState(world, cursor, blockState, x, y, z, blockBox);
                         }
                     }
                 }
@@ -417,31 +533,36 @@ public abstract class MineshaftPiece extends StructurePiece {
     /**
      * Has a chance of replacing each air block in the provided area with a block determined by the provided BlockSelector.
      */
-    protected void chanceReplaceAir(ISeedReader world, MutableBoundingBox blockBox, Random random, float chance, int minX, int minY, int minZ, int maxX, int maxY, int maxZ, BlockSetSelector selector) {
+    protected void chanceReplaceAir(ISeedReader world, MutableBoundingBox blockBox, Random random, float chance, int minX, int minY, int minZ, int maxX, int maxY, int maxZ, CompiledBlockSetSelector selector) {
+        BlockPos.Mutable cursor = new BlockPos.Mutable();
+        MutableBoundingBox localBox = this.getLocalBox(blockBox);
         for (int x = minX; x <= maxX; ++x) {
             for (int y = minY; y <= maxY; ++y) {
                 for (int z = minZ; z <= maxZ; ++z) {
-                    if (random.nextFloat() < chance) {
-                        BlockState currState = this.getBlockStateFromPosFixed(world, x, y, z, blockBox);
+                    if (random.nextFloat() < chance && isInside(localBox, x, y, z)) {
+                        BlockState currState = this.getBlockStateFromPosFixed(world, cursor, x, y, z, blockBox);
                         if (currState != null && currState.isAir()) {
-                            this.setBlockState(world, selector.get(random), x, y, z, blockBox);
+                            this.setBlockState(world, cursor, selector.get(random), x, y, z, blockBox);
                         }
                     }
                 }
             }
-        }    }
+        }
+    }
 
     /**
      * Has a chance of replacing each non-air block in the provided area with the provided BlockState.
      */
     protected void chanceReplaceNonAir(ISeedReader world, MutableBoundingBox blockBox, Random random, float chance, int minX, int minY, int minZ, int maxX, int maxY, int maxZ, BlockState blockState) {
+        BlockPos.Mutable cursor = new BlockPos.Mutable();
+        MutableBoundingBox localBox = this.getLocalBox(blockBox);
         for (int x = minX; x <= maxX; ++x) {
             for (int y = minY; y <= maxY; ++y) {
                 for (int z = minZ; z <= maxZ; ++z) {
-                    if (random.nextFloat() < chance) {
-                        BlockState currState = this.getBlockStateFromPosFixed(world, x, y, z, blockBox);
+                    if (random.nextFloat() < chance && isInside(localBox, x, y, z)) {
+                        BlockState currState = this.getBlockStateFromPosFixed(world, cursor, x, y, z, blockBox);
                         if (currState != null && !currState.isAir()) {
-                            this.setBlockState(world, blockState, x, y, z, blockBox);
+                            this.setBlockState(world, cursor, blockState, x, y, z, blockBox);
                         }
                     }
                 }
@@ -452,14 +573,16 @@ public abstract class MineshaftPiece extends StructurePiece {
     /**
      * Has a chance of replacing each non-air block in the provided area with a block determined by the provided BlockSelector.
      */
-    protected void chanceReplaceNonAir(ISeedReader world, MutableBoundingBox blockBox, Random random, float chance, int minX, int minY, int minZ, int maxX, int maxY, int maxZ, BlockSetSelector selector) {
+    protected void chanceReplaceNonAir(ISeedReader world, MutableBoundingBox blockBox, Random random, float chance, int minX, int minY, int minZ, int maxX, int maxY, int maxZ, CompiledBlockSetSelector selector) {
+        BlockPos.Mutable cursor = new BlockPos.Mutable();
+        MutableBoundingBox localBox = this.getLocalBox(blockBox);
         for (int x = minX; x <= maxX; ++x) {
             for (int y = minY; y <= maxY; ++y) {
                 for (int z = minZ; z <= maxZ; ++z) {
-                    if (random.nextFloat() < chance) {
-                        BlockState currState = this.getBlockStateFromPosFixed(world, x, y, z, blockBox);
+                    if (random.nextFloat() < chance && isInside(localBox, x, y, z)) {
+                        BlockState currState = this.getBlockStateFromPosFixed(world, cursor, x, y, z, blockBox);
                         if (currState != null && !currState.isAir()) {
-                            this.setBlockState(world, selector.get(random), x, y, z, blockBox);
+                            this.setBlockState(world, cursor, selector.get(random), x, y, z, blockBox);
                         }
                     }
                 }
@@ -477,23 +600,205 @@ public abstract class MineshaftPiece extends StructurePiece {
         }
     }
 
+    /**
+     * Converts a box in world space into this piece's local space.
+     * The returned box holds the range of local coordinates whose world positions lie inside the given box.
+     * Fill methods use this to skip the work for positions outside the chunk currently being generated.
+     */
+    protected MutableBoundingBox getLocalBox(MutableBoundingBox box) {
+        int originX = this.getXWithOffset(0, 0);
+        int originY = this.getYWithOffset(0);
+        int originZ = this.getZWithOffset(0, 0);
+
+        // Local x runs along either the world x or z axis depending on orientation, and local z along the other.
+        // Steps are +1 or -1 depending on whether the world coordinate increases or decreases with the local one.
+        int stepX, stepZ;
+        MutableBoundingBox localBox;
+        if (this.getXWithOffset(1, 0) != originX) {
+            stepX = this.getXWithOffset(1, 0) - originX;
+            stepZ = this.getZWithOffset(0, 1) - originZ;
+            localBox = new MutableBoundingBox(
+                toLocalMin(originX, stepX, box.minX, box.maxX), box.minY - originY, toLocalMin(originZ, stepZ, box.minZ, box.maxZ),
+                toLocalMax(originX, stepX, box.minX, box.maxX), box.maxY - originY, toLocalMax(originZ, stepZ, box.minZ, box.maxZ));
+        } else {
+            stepX = this.getZWithOffset(1, 0) - originZ;
+            stepZ = this.getXWithOffset(0, 1) - originX;
+            localBox = new MutableBoundingBox(
+                toLocalMin(originZ, stepX, box.minZ, box.maxZ), box.minY - originY, toLocalMin(originX, stepZ, box.minX, box.maxX),
+                toLocalMax(originZ, stepX, box.minZ, box.maxZ), box.maxY - originY, toLocalMax(originX, stepZ, box.minX, box.maxX));
+        }
+        return localBox;
+    }
+
+    /**
+     * Returns the part of the given local area whose world positions lie inside the given world box.
+     * The returned area is empty (min > max) if there is no overlap.
+     */
+    protected MutableBoundingBox getLocalArea(MutableBoundingBox box, int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+        MutableBoundingBox localBox = this.getLocalBox(box);
+        return new MutableBoundingBox(
+            Math.max(minX, localBox.minX), Math.max(minY, localBox.minY), Math.max(minZ, localBox.minZ),
+            Math.min(maxX, localBox.maxX), Math.min(maxY, localBox.maxY), Math.min(maxZ, localBox.maxZ));
+    }
+
+    protected static boolean isInside(MutableBoundingBox localBox, int x, int y, int z) {
+        return x >= localBox.minX && x <= localBox.maxX && y >= localBox.minY && y <= localBox.maxY && z >= localBox.minZ && z <= localBox.maxZ;
+    }
+
+    private static int toLocalMin(int origin, int step, int worldMin, int worldMax) {
+        return step > 0 ? worldMin - origin : origin - worldMax;
+    }
+
+    private static int toLocalMax(int origin, int step, int worldMin, int worldMax) {
+        return step > 0 ? worldMax - origin : origin - worldMin;
+    }
+
     /**
      * My "fixed" version of getBlockAt that returns null instead of air if block is out of bounds
      *
      * @return the block at the given position, or null if it is outside of the blockBox
      */
     protected BlockState getBlockStateFromPosFixed(IBlockReader blockView, int x, int y, int z, MutableBoundingBox blockBox) {
-        int i = this.getXWithOffset(x, z);
-        int j = this.getYWithOffset(y);
-        int k = this.getZWithOffset(x, z);
-        BlockPos blockPos = new BlockPos(i, j, k);
-        return !blockBox.isVecInside(blockPos) ? null : blockView.getBlockState(blockPos);
+        return this.getBlockStateFromPosFixed(blockView, new BlockPos.Mutable(), x, y, z, blockBox);
+    }
+
+    /* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+     *                                CURSOR-BASED BLOCK SET/GET                               *
+     * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+    /*
+     * The following methods behave the same as their vanilla counterparts, except that instead of allocating
+     * a new BlockPos for every call, they move a mutable cursor to the position being accessed.
+     * Helpers that touch many blocks create a cursor once per call and reuse it for every position.
+     * Cursors should never be shared between pieces or threads.
+     */
+
+    /**
+     * Moves the cursor to the world position of the given local coordinates.
+     * @return the cursor
+     */
+    protected BlockPos.Mutable moveCursor(BlockPos.Mutable cursor, int x, int y, int z) {
+        return cursor.setPos(this.getXWithOffset(x, z), this.getYWithOffset(y), this.getZWithOffset(x, z));
+    }
+
+    /**
+     * @return the block at the given position, or air if it is outside of the blockBox
+     */
+    protected BlockState getBlockStateFromPos(IBlockReader blockView, BlockPos.Mutable cursor, int x, int y, int z, MutableBoundingBox blockBox) {
+        this.moveCursor(cursor, x, y, z);
+        return !blockBox.isVecInside(cursor) ? Blocks.AIR.getDefaultState() : blockView.getBlockState(cursor);
+    }
+
+    /**
+     * @return the block at the given position, or null if it is outside of the blockBox
+     */
+    protected BlockState getBlockStateFromPosFixed(IBlockReader blockView, BlockPos.Mutable cursor, int x, int y, int z, MutableBoundingBox blockBox) {
+        this.moveCursor(cursor, x, y, z);
+        return !blockBox.isVecInside(cursor) ? null : blockView.getBlockState(cursor);
+    }
+
+    /**
+     * Places a block at the given position if it is inside the blockBox, rotating and mirroring it to match this piece's orientation.
+     */
+    protected void setBlockState(ISeedReader world, BlockPos.Mutable cursor, BlockState blockState, int x, int y, int z, MutableBoundingBox blockBox) {
+        this.moveCursor(cursor, x, y, z);
+        if (!blockBox.isVecInside(cursor)) {
+            return;
+        }
+
+        this.placeBlock(world, cursor, orient(blockState, this.getCoordBaseMode()), false);
+    }
+
+    /**
+     * Same as vanilla's setBlockState, but goes through {@link #placeBlock} so that every block placed is counted in voxelsPlaced.
+     */
+    @Override
+    @ParametersAreNonnullByDefault
+    protected void setBlockState(ISeedReader world, BlockState blockState, int x, int y, int z, MutableBoundingBox blockBox) {
+        this.setBlockState(world, new BlockPos.Mutable(), blockState, x, y, z, blockBox);
+    }
+
+    /**
+     * Mirrors and rotates a block the same way vanilla does for pieces with the given orientation.
+     */
+    static BlockState orient(BlockState blockState, Direction facing) {
+        if (facing == Direction.SOUTH || facing == Direction.WEST) {
+            blockState = blockState.mirror(Mirror.LEFT_RIGHT);
+        }
+        if (facing == Direction.WEST || facing == Direction.EAST) {
+            blockState = blockState.rotate(Rotation.CLOCKWISE_90);
+        }
+        return blockState;
+    }
+
+    /**
+     * Places an already oriented block at the cursor, scheduling fluid ticks and post-processing like vanilla does.
+     * @param postprocess whether to mark the position for post-processing even if the block doesn't need it
+     */
+    void placeBlock(ISeedReader world, BlockPos.Mutable cursor, BlockState blockState, boolean postprocess) {
+        world.setBlockState(cursor, blockState, 2);
+        this.voxelsPlaced++;
+        FluidState fluidState = world.getFluidState(cursor);
+        if (!fluidState.isEmpty()) {
+            world.getPendingFluidTicks().scheduleTick(cursor, fluidState.getFluid(), 0);
+        }
+        if (postprocess || needsPostprocessing(blockState)) {
+            world.getChunk(cursor).markBlockForPostprocessing(cursor);
+        }
+    }
+
+    static boolean needsPostprocessing(BlockState blockState) {
+        return BLOCKS_NEEDING_POSTPROCESSING.contains(blockState.getBlock());
+    }
+
+    /**
+     * Returns the compiled fill program with the given key for this piece's orientation and variant,
+     * compiling it from the definition the first time it is needed.
+     * The key must uniquely identify the definition among all pieces, including anything else it depends on (e.g. ore type).
+     */
+    protected VoxelProgram getVoxelProgram(String key, Consumer<VoxelProgram.Builder> definition) {
+        Direction facing = this.getCoordBaseMode();
+        VoxelProgram[] programs = this.settings.voxelPrograms.computeIfAbsent(key, k -> new VoxelProgram[4]);
+        VoxelProgram program = programs[facing.getHorizontalIndex()];
+        if (program == null) {
+            // Racing threads compile identical programs, so it doesn't matter which one ends up cached
+            program = VoxelProgram.compile(facing, definition);
+            programs[facing.getHorizontalIndex()] = program;
+        }
+        return program;
     }
 
     /* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
      *                                  PLACEMENT METHODS                                      *
      * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
 
+    /**
+     * Returns true if there is any liquid along the edges of the given box, in which case pieces skip placement.
+     */
+    @Override
+    protected boolean isLiquidInStructureBoundingBox(IBlockReader world, MutableBoundingBox box) {
+        boolean liquid = super.isLiquidInStructureBoundingBox(world, box);
+        if (liquid) {
+            this.metrics.skippedLiquid.increment();
+        }
+        return liquid;
+    }
+
+    /**
+     * Returns true if either of the two given columns is in an ocean biome.
+     * Since a piece is placed once for every chunk it intersects, the result is only computed the first time
+     * and then reused (and saved with the piece), so biomes are never queried more than once per piece.
+     */
+    protected boolean isInOcean(ISeedReader world, int localX1, int localZ1, int localX2, int localZ2) {
+        if (this.inOcean == null) {
+            this.inOcean = this.isInOcean(world, localX1, localZ1) || this.isInOcean(world, localX2, localZ2);
+        }
+        if (this.inOcean) {
+            this.metrics.skippedOcean.increment();
+        }
+        return this.inOcean;
+    }
+
     protected boolean isInOcean(ISeedReader world, int localX, int localZ) {
         BlockPos pos = new BlockPos(getXWithOffset(localX, localZ), 1, getZWithOffset(localX, localZ));
         Biome biome = world.getBiome(pos);
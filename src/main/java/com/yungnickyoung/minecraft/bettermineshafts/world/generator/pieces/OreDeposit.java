@@ -1,9 +1,9 @@
 package com.yungnickyoung.minecraft.bettermineshafts.world.generator.pieces;
 
-import com.yungnickyoung.minecraft.bettermineshafts.BetterMineshafts;
-import com.yungnickyoung.minecraft.bettermineshafts.config.Configuration;
 import com.yungnickyoung.minecraft.bettermineshafts.world.generator.BetterMineshaftStructurePieceType;
+import com.yungnickyoung.minecraft.bettermineshafts.world.generator.MineshaftPieceList;
 import com.yungnickyoung.minecraft.bettermineshafts.world.generator.MineshaftVariantSettings;
+import com.yungnickyoung.minecraft.bettermineshafts.world.generator.OreDistribution;
 import com.yungnickyoung.minecraft.yungsapi.world.BoundingBoxHelper;
 import net.minecraft.block.BlockState;
 import net.minecraft.block.Blocks;
@@ -19,43 +19,11 @@ import net.minecraft.world.gen.feature.structure.StructurePiece;
 import net.minecraft.world.gen.feature.template.TemplateManager;
 
 import javax.annotation.ParametersAreNonnullByDefault;
-import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
 
 public class OreDeposit extends MineshaftPiece {
-    public enum OreType {
-        COBBLE(0, Blocks.COBBLESTONE.getDefaultState(), Configuration.ores.cobble.get()),
-        COAL(1, Blocks.COAL_ORE.getDefaultState(), Configuration.ores.coal.get() + COBBLE.threshold),
-        IRON(2, Blocks.IRON_ORE.getDefaultState(), Configuration.ores.iron.get() + COAL.threshold),
-        REDSTONE(3, Blocks.REDSTONE_ORE.getDefaultState(), Configuration.ores.redstone.get() + IRON.threshold),
-        GOLD(4, Blocks.GOLD_ORE.getDefaultState(), Configuration.ores.gold.get() + REDSTONE.threshold),
-        LAPIS(5, Blocks.LAPIS_ORE.getDefaultState(), Configuration.ores.lapis.get() + GOLD.threshold),
-        EMERALD(6, Blocks.EMERALD_ORE.getDefaultState(), Configuration.ores.emerald.get() + LAPIS.threshold),
-        DIAMOND(7, Blocks.DIAMOND_ORE.getDefaultState(), Configuration.ores.diamond.get() + EMERALD.threshold);
-
-        private final int value;
-        private final BlockState block;
-        private int threshold;
-
-        OreType(int value, BlockState block, int threshold) {
-            this.value = value;
-            this.block = block;
-            this.threshold = threshold;
-        }
-
-        public static OreType valueOf(int value) {
-            return Arrays.stream(values())
-                .filter(oreType -> oreType.value == value)
-                .findFirst().get();
-        }
-
-        public BlockState getBlock() {
-            return this.block;
-        }
-    }
-
-    private OreType oreType;
+    private BlockState ore;
     private static final int
         SECONDARY_AXIS_LEN = 5,
         Y_AXIS_LEN = 5,
@@ -67,7 +35,13 @@ public class OreDeposit extends MineshaftPiece {
 
     public OreDeposit(TemplateManager structureManager, CompoundNBT compoundTag) {
         super(BetterMineshaftStructurePieceType.ORE_DEPOSIT, compoundTag);
-        this.oreType = OreType.valueOf(compoundTag.getInt("OreType"));
+        BlockState savedOre = compoundTag.contains("Ore") ? OreDistribution.getOre(compoundTag.getString("Ore")) : null;
+        if (savedOre != null) {
+            this.ore = savedOre;
+        } else {
+            // Pieces saved before ores were saved by name, or whose ore's mod has since been removed
+            this.ore = OreDistribution.getLegacyOre(compoundTag.getInt("OreType"));
+        }
     }
 
     public OreDeposit(int chainLength, Random random, MutableBoundingBox blockBox, Direction direction, MineshaftVariantSettings settings) {
@@ -80,7 +54,7 @@ public class OreDeposit extends MineshaftPiece {
     @ParametersAreNonnullByDefault
     protected void readAdditional(CompoundNBT tag) {
         super.toNbt(tag);
-        tag.putInt("OreType", this.oreType.value);
+        tag.putString("Ore", String.valueOf(this.ore.getBlock().getRegistryName()));
     }
 
     public static MutableBoundingBox determineBoxPosition(List<StructurePiece> list, Random random, int x, int y, int z, Direction direction) {
@@ -88,7 +62,7 @@ public class OreDeposit extends MineshaftPiece {
 
         // The following func call returns null if this new blockbox does not intersect with any pieces in the list.
         // If there is an intersection, the following func call returns the piece that intersects.
-        StructurePiece intersectingPiece = StructurePiece.findIntersecting(list, blockBox); // findIntersecting
+        StructurePiece intersectingPiece = MineshaftPieceList.findIntersecting(list, blockBox); // findIntersecting
 
         // Thus, this function returns null if blackBox intersects with an existing piece. Otherwise, we return blackbox
         return intersectingPiece != null ? null : blockBox;
@@ -96,40 +70,29 @@ public class OreDeposit extends MineshaftPiece {
 
     @Override
     public void buildComponent(StructurePiece structurePiece, List<StructurePiece> list, Random random) {
-        int r = random.nextInt(100);
-
-        // Determine ore type
-        for (OreType oreType : OreType.values()) {
-            if (r < oreType.threshold) {
-                this.oreType = oreType;
-                break;
-            }
-        }
-
-        // Double check sum to see if user messed up spawn chances
-        if (OreType.DIAMOND.threshold != 100)
-            BetterMineshafts.LOGGER.error("Your ore spawn chances don't add up to 100! Ores won't spawn as you intend!");
-        if (this.oreType == null)
-            this.oreType = OreType.COBBLE;
+        this.ore = OreDistribution.get().sample(random);
     }
 
     @Override
     @ParametersAreNonnullByDefault
-    public boolean func_230383_a_(ISeedReader world, StructureManager structureManager, ChunkGenerator generator, Random random, MutableBoundingBox box, ChunkPos pos, BlockPos blockPos) {
+    protected boolean generate(ISeedReader world, StructureManager structureManager, ChunkGenerator generator, Random random, MutableBoundingBox box, ChunkPos pos, BlockPos blockPos) {
         // Don't spawn if liquid in this box or if in ocean biome
         if (this.isLiquidInStructureBoundingBox(world, box)) return false;
-        if (this.isInOcean(world, 0, 0) || this.isInOcean(world, LOCAL_X_END, LOCAL_Z_END)) return false;
+        if (this.isInOcean(world, 0, 0, LOCAL_X_END, LOCAL_Z_END)) return false;
 
+        this.getVoxelProgram("ore_deposit_" + this.ore.getBlock().getRegistryName(), this::defineProgram).run(this, world, box, random);
+        return true;
+    }
+
+    private void defineProgram(VoxelProgram.Builder program) {
         BlockState COBBLE = Blocks.COBBLESTONE.getDefaultState();
-        BlockState ORE_BLOCK = this.oreType.getBlock();
+        BlockState ORE_BLOCK = this.ore;
 
         // Fill with cobble
-        this.chanceReplaceNonAir(world, box, random, .9f, 0, 0, 0, LOCAL_X_END, LOCAL_Y_END, LOCAL_Z_END, COBBLE);
+        program.chanceReplaceNonAir(.9f, 0, 0, 0, LOCAL_X_END, LOCAL_Y_END, LOCAL_Z_END, COBBLE);
 
         // Ore deposit. Ore is more dense in center than edges
-        this.chanceReplaceNonAir(world, box, random, .65f, 1, 1, 1, LOCAL_X_END - 1, LOCAL_Y_END - 1, LOCAL_Z_END - 1, ORE_BLOCK);
-        this.chanceReplaceNonAir(world, box, random, .15f, 0, 0, 0, LOCAL_X_END, LOCAL_Y_END, LOCAL_Z_END, ORE_BLOCK);
-
-        return true;
+        program.chanceReplaceNonAir(.65f, 1, 1, 1, LOCAL_X_END - 1, LOCAL_Y_END - 1, LOCAL_Z_END - 1, ORE_BLOCK);
+        program.chanceReplaceNonAir(.15f, 0, 0, 0, LOCAL_X_END, LOCAL_Y_END, LOCAL_Z_END, ORE_BLOCK);
     }
 }
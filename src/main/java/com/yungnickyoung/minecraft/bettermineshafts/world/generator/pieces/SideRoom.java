@@ -1,9 +1,10 @@
 package com.yungnickyoung.minecraft.bettermineshafts.world.generator.pieces;
 
 import com.google.common.collect.Lists;
-import com.yungnickyoung.minecraft.bettermineshafts.config.Configuration;
+import com.yungnickyoung.minecraft.bettermineshafts.config.ConfigSnapshot;
 import com.yungnickyoung.minecraft.bettermineshafts.world.generator.BetterMineshaftGenerator;
 import com.yungnickyoung.minecraft.bettermineshafts.world.generator.BetterMineshaftStructurePieceType;
+import com.yungnickyoung.minecraft.bettermineshafts.world.generator.MineshaftPieceList;
 import com.yungnickyoung.minecraft.bettermineshafts.world.generator.MineshaftVariantSettings;
 import com.yungnickyoung.minecraft.yungsapi.world.BoundingBoxHelper;
 import net.minecraft.block.*;
@@ -61,7 +62,7 @@ public class SideRoom extends MineshaftPiece {
 
         // The following func call returns null if this new blockbox does not intersect with any pieces in the list.
         // If there is an intersection, the following func call returns the piece that intersects.
-        StructurePiece intersectingPiece = StructurePiece.findIntersecting(list, blockBox);
+        StructurePiece intersectingPiece = MineshaftPieceList.findIntersecting(list, blockBox);
 
         // Thus, this function returns null if blackBox intersects with an existing piece. Otherwise, we return blackbox
         return intersectingPiece != null ? null : blockBox;
@@ -70,7 +71,7 @@ public class SideRoom extends MineshaftPiece {
     @Override
     public void buildComponent(StructurePiece structurePiece, List<StructurePiece> list, Random random) {
         // Chance of generating side room dungeon downstairs
-        if (random.nextFloat() < Configuration.spawnRates.workstationDungeonSpawnRate.get()) {
+        if (random.nextFloat() < ConfigSnapshot.get().workstationDungeonSpawnRate) {
             Direction direction = this.getCoordBaseMode();
             if (direction == null) {
                 return;
@@ -99,21 +100,23 @@ public class SideRoom extends MineshaftPiece {
 
     @Override
     @ParametersAreNonnullByDefault
-    public boolean func_230383_a_(ISeedReader world, StructureManager structureManager, ChunkGenerator generator, Random random, MutableBoundingBox box, ChunkPos pos, BlockPos blockPos) {
+    protected boolean generate(ISeedReader world, StructureManager structureManager, ChunkGenerator generator, Random random, MutableBoundingBox box, ChunkPos pos, BlockPos blockPos) {
         // Don't spawn if liquid in this box or if in ocean biome
         if (this.isLiquidInStructureBoundingBox(world, box)) return false;
-        if (this.isInOcean(world, 0, 0) || this.isInOcean(world, LOCAL_X_END, LOCAL_Z_END)) return false;
+        if (this.isInOcean(world, 0, 0, LOCAL_X_END, LOCAL_Z_END)) return false;
 
         // Fill with stone then clean out with air. Track ceiling positions to see where we can place iron bar supports
         this.fill(world, box, random, 0, 0, 0, LOCAL_X_END, 1, LOCAL_Z_END, getBrickSelector()); // Floor
         this.replaceNonAir(world, box, random, 0, 2, 0, LOCAL_X_END, LOCAL_Y_END - 1, LOCAL_Z_END, getBrickSelector());
         this.fill(world, box, 1, 1, 1, LOCAL_X_END - 1, LOCAL_Y_END - 1, LOCAL_Z_END, CAVE_AIR);
         boolean[][] ceiling = new boolean[SECONDARY_AXIS_LEN][MAIN_AXIS_LEN];
-        for (int x = 0; x <= LOCAL_X_END; ++x) {
-            for (int z = 0; z <= LOCAL_Z_END; ++z) {
-                BlockState currState = this.getBlockStateFromPosFixed(world, x, LOCAL_Y_END, z, box);
+        MutableBoundingBox ceilingArea = this.getLocalArea(box, 0, LOCAL_Y_END, 0, LOCAL_X_END, LOCAL_Y_END, LOCAL_Z_END);
+        BlockPos.Mutable cursor = new BlockPos.Mutable();
+        for (int x = ceilingArea.minX; x <= ceilingArea.maxX; ++x) {
+            for (int z = ceilingArea.minZ; z <= ceilingArea.maxZ; ++z) {
+                BlockState currState = this.getBlockStateFromPosFixed(world, cursor, x, LOCAL_Y_END, z, box);
                 if (currState != null && !currState.isAir()) {
-                    this.setBlockState(world, getBrickSelector().get(random), x, LOCAL_Y_END, z, box);
+                    this.setBlockState(world, cursor, getBrickSelector().get(random), x, LOCAL_Y_END, z, box);
                     ceiling[x][z] = true;
                 }
             }
@@ -1,6 +1,7 @@
 package com.yungnickyoung.minecraft.bettermineshafts.world.generator.pieces;
 
 import com.yungnickyoung.minecraft.bettermineshafts.world.generator.BetterMineshaftStructurePieceType;
+import com.yungnickyoung.minecraft.bettermineshafts.world.generator.MineshaftPieceList;
 import com.yungnickyoung.minecraft.bettermineshafts.world.generator.MineshaftVariantSettings;
 import net.minecraft.block.BlockState;
 import net.minecraft.block.Blocks;
@@ -78,7 +79,7 @@ public class SideRoomDungeon extends MineshaftPiece {
 
         // The following func call returns null if this new blockbox does not intersect with any pieces in the list.
         // If there is an intersection, the following func call returns the piece that intersects.
-        StructurePiece intersectingPiece = StructurePiece.findIntersecting(list, blockBox);
+        StructurePiece intersectingPiece = MineshaftPieceList.findIntersecting(list, blockBox);
 
         // Thus, this function returns null if blackBox intersects with an existing piece. Otherwise, we return blackbox
         return intersectingPiece != null ? null : blockBox;
@@ -90,34 +91,27 @@ public class SideRoomDungeon extends MineshaftPiece {
 
     @Override
     @ParametersAreNonnullByDefault
-    public boolean func_230383_a_(ISeedReader world, StructureManager structureManager, ChunkGenerator generator, Random random, MutableBoundingBox box, ChunkPos pos, BlockPos blockPos) {
+    protected boolean generate(ISeedReader world, StructureManager structureManager, ChunkGenerator generator, Random random, MutableBoundingBox box, ChunkPos pos, BlockPos blockPos) {
         // Don't spawn if liquid in this box or if in ocean biome
         if (this.isLiquidInStructureBoundingBox(world, box)) return false;
-        if (this.isInOcean(world, 0, 0) || this.isInOcean(world, LOCAL_X_END, LOCAL_Z_END)) return false;
+        if (this.isInOcean(world, 0, 0, LOCAL_X_END, LOCAL_Z_END)) return false;
 
-         // Fill with stone then clean out with air
-        this.fill(world, box, random, 0, 0, 0, LOCAL_X_END, LOCAL_Y_END, LOCAL_Z_END, getBrickSelector());
-        this.fill(world, box, 1, 1, 1, LOCAL_X_END - 1, LOCAL_Y_END - 1, LOCAL_Z_END - 1, CAVE_AIR);
+        // Fill with stone then clean out with air
+        this.getVoxelProgram("side_room_dungeon_shell", this::defineShellProgram).run(this, world, box, random);
 
         generateLegs(world, random);
 
-        // Ladders
-        BlockState LADDER = Blocks.LADDER.getDefaultState().with(LadderBlock.FACING, Direction.NORTH);
-        this.fill(world, box, 4, 1, 1, 4, 3, 1, LADDER);
-
         // Spawner
         BlockPos spawnerPos = new BlockPos(this.getXWithOffset(4,5), this.getYWithOffset(1), this.getZWithOffset(4, 5));
         world.setBlockState(spawnerPos, Blocks.SPAWNER.getDefaultState(), 2);
+        this.voxelsPlaced++;
         TileEntity blockEntity = world.getTileEntity(spawnerPos);
         if (blockEntity instanceof MobSpawnerTileEntity) {
             ((MobSpawnerTileEntity)blockEntity).getSpawnerBaseLogic().setEntityType(EntityType.CAVE_SPIDER);
         }
 
-        // Cobwebs immediately surrounding chests
-        this.chanceReplaceAir(world, box, random, .9f, 3, 1, 4, 5, 2, 6, Blocks.COBWEB.getDefaultState());
-
-        // Fill room randomly with cobwebs
-        this.chanceReplaceAir(world, box, random, .1f, 1, 1, 1, LOCAL_X_END - 1, 2, LOCAL_Z_END, Blocks.COBWEB.getDefaultState());
+        // Ladders and cobwebs
+        this.getVoxelProgram("side_room_dungeon_interior", this::defineInteriorProgram).run(this, world, box, random);
 
         // Chests
         this.generateChest(world, box, random, 1, 1, LOCAL_Z_END - 1, LootTables.CHESTS_ABANDONED_MINESHAFT);
@@ -131,6 +125,23 @@ public class SideRoomDungeon extends MineshaftPiece {
         return true;
     }
 
+    private void defineShellProgram(VoxelProgram.Builder program) {
+        program.fill(0, 0, 0, LOCAL_X_END, LOCAL_Y_END, LOCAL_Z_END, getBrickSelector());
+        program.fill(1, 1, 1, LOCAL_X_END - 1, LOCAL_Y_END - 1, LOCAL_Z_END - 1, CAVE_AIR);
+    }
+
+    private void defineInteriorProgram(VoxelProgram.Builder program) {
+        // Ladders. These don't overlap the spawner, so it doesn't matter that they are now placed after it
+        BlockState LADDER = Blocks.LADDER.getDefaultState().with(LadderBlock.FACING, Direction.NORTH);
+        program.fill(4, 1, 1, 4, 3, 1, LADDER);
+
+        // Cobwebs immediately surrounding chests
+        program.chanceReplaceAir(.9f, 3, 1, 4, 5, 2, 6, Blocks.COBWEB.getDefaultState());
+
+        // Fill room randomly with cobwebs
+        program.chanceReplaceAir(.1f, 1, 1, 1, LOCAL_X_END - 1, 2, LOCAL_Z_END, Blocks.COBWEB.getDefaultState());
+    }
+
     private void generateLegs(ISeedReader world, Random random) {
         generateLegWithSelector(world, random, 1, 1, getBrickSelector());
         generateLegWithSelector(world, random, 1, LOCAL_Z_END - 1, getBrickSelector());
@@ -1,9 +1,11 @@
 package com.yungnickyoung.minecraft.bettermineshafts.world.generator.pieces;
 
 import com.google.common.collect.Lists;
-import com.yungnickyoung.minecraft.bettermineshafts.config.Configuration;
+import com.yungnickyoung.minecraft.bettermineshafts.config.ConfigSnapshot;
 import com.yungnickyoung.minecraft.bettermineshafts.world.generator.BetterMineshaftGenerator;
 import com.yungnickyoung.minecraft.bettermineshafts.world.generator.BetterMineshaftStructurePieceType;
+import com.yungnickyoung.minecraft.bettermineshafts.world.generator.MineshaftLayoutEngine;
+import com.yungnickyoung.minecraft.bettermineshafts.world.generator.MineshaftPieceList;
 import com.yungnickyoung.minecraft.bettermineshafts.world.generator.MineshaftVariantSettings;
 import com.yungnickyoung.minecraft.yungsapi.world.BoundingBoxHelper;
 import net.minecraft.block.*;
@@ -68,7 +70,7 @@ public class SmallTunnel extends MineshaftPiece {
 
         // The following func call returns null if this new blockbox does not intersect with any pieces in the list.
         // If there is an intersection, the following func call returns the piece that intersects.
-        StructurePiece intersectingPiece = StructurePiece.findIntersecting(list, blockBox);
+        StructurePiece intersectingPiece = MineshaftPieceList.findIntersecting(list, blockBox);
 
         // Thus, this function returns null if blackBox intersects with an existing piece. Otherwise, we return blackbox
         return intersectingPiece != null ? null : blockBox;
@@ -97,15 +99,15 @@ public class SmallTunnel extends MineshaftPiece {
                 BetterMineshaftGenerator.generateAndAddSmallTunnelPiece(structurePiece, list, random, this.boundingBox.maxX + 1, this.boundingBox.minY, this.boundingBox.minZ, direction, chainLength);
         }
 
-        buildSupports(random);
+        MineshaftLayoutEngine.schedule(list, () -> buildSupports(random));
     }
 
     @Override
     @ParametersAreNonnullByDefault
-    public boolean func_230383_a_(ISeedReader world, StructureManager structureManager, ChunkGenerator generator, Random random, MutableBoundingBox box, ChunkPos pos, BlockPos blockPos) {
+    protected boolean generate(ISeedReader world, StructureManager structureManager, ChunkGenerator generator, Random random, MutableBoundingBox box, ChunkPos pos, BlockPos blockPos) {
         // Don't spawn if liquid in this box or if in ocean biome
         if (this.isLiquidInStructureBoundingBox(world, box)) return false;
-        if (this.isInOcean(world, 0, 0) || this.isInOcean(world, LOCAL_X_END, LOCAL_Z_END)) return false;
+        if (this.isInOcean(world, 0, 0, LOCAL_X_END, LOCAL_Z_END)) return false;
 
         // Randomize blocks
         this.chanceReplaceNonAir(world, box, random, settings.replacementRate, 0, 0, 0, LOCAL_X_END, LOCAL_Y_END, LOCAL_Z_END, getMainSelector());
@@ -133,7 +135,7 @@ public class SmallTunnel extends MineshaftPiece {
     }
 
     private void generateCobwebs(ISeedReader world, MutableBoundingBox box, Random random) {
-        float chance = Configuration.spawnRates.cobwebSpawnRate.get().floatValue();
+        float chance = (float) ConfigSnapshot.get().cobwebSpawnRate;
         supports.forEach(z -> {
             this.chanceReplaceAir(world, box, random, chance, 1, 3, z - 3, 1, 3, z + 3, Blocks.COBWEB.getDefaultState());
             this.chanceReplaceAir(world, box, random, chance, 3, 3, z - 3, 3, 3, z + 3, Blocks.COBWEB.getDefaultState());
@@ -141,13 +143,17 @@ public class SmallTunnel extends MineshaftPiece {
     }
 
     private void generateChestCarts(ISeedReader world, MutableBoundingBox box, Random random, ResourceLocation lootTableId) {
+        BlockPos.Mutable cursor = new BlockPos.Mutable();
+        BlockPos.Mutable below = new BlockPos.Mutable();
+        double spawnRate = ConfigSnapshot.get().smallShaftChestMinecartSpawnRate;
         for (int z = 0; z <= LOCAL_Z_END; z++) {
-            if (random.nextFloat() < Configuration.spawnRates.smallShaftChestMinecartSpawnRate.get()) {
-                BlockPos blockPos = new BlockPos(this.getXWithOffset(LOCAL_X_END / 2, z), this.getYWithOffset(1), this.getZWithOffset(LOCAL_X_END / 2, z));
-                if (box.isVecInside(blockPos) && !world.getBlockState(blockPos.down()).isAir()) {
-                    ChestMinecartEntity chestMinecartEntity = new ChestMinecartEntity(world.getWorld(), ((float) blockPos.getX() + 0.5F), ((float) blockPos.getY() + 0.5F), ((float) blockPos.getZ() + 0.5F));
+            if (random.nextFloat() < spawnRate) {
+                this.moveCursor(cursor, LOCAL_X_END / 2, 1, z);
+                if (box.isVecInside(cursor) && !world.getBlockState(below.setPos(cursor).move(Direction.DOWN)).isAir()) {
+                    ChestMinecartEntity chestMinecartEntity = new ChestMinecartEntity(world.getWorld(), ((float) cursor.getX() + 0.5F), ((float) cursor.getY() + 0.5F), ((float) cursor.getZ() + 0.5F));
                     chestMinecartEntity.setLootTable(lootTableId, random.nextLong());
                     world.addEntity(chestMinecartEntity);
+                    this.entitiesSpawned++;
                 }
             }
         }
@@ -179,12 +185,16 @@ public class SmallTunnel extends MineshaftPiece {
     }
 
     private void generateTntCarts(ISeedReader world, MutableBoundingBox box, Random random) {
+        BlockPos.Mutable cursor = new BlockPos.Mutable();
+        BlockPos.Mutable below = new BlockPos.Mutable();
+        double spawnRate = ConfigSnapshot.get().smallShaftTntMinecartSpawnRate;
         for (int z = 0; z <= LOCAL_Z_END; z++) {
-            if (random.nextFloat() < Configuration.spawnRates.smallShaftTntMinecartSpawnRate.get()) {
-                BlockPos blockPos = new BlockPos(this.getXWithOffset(LOCAL_X_END / 2, z), this.getYWithOffset(1), this.getZWithOffset(LOCAL_X_END / 2, z));
-                if (box.isVecInside(blockPos) && !world.getBlockState(blockPos.down()).isAir()) {
-                    TNTMinecartEntity tntMinecartEntity = new TNTMinecartEntity(world.getWorld(), ((float) blockPos.getX() + 0.5F), ((float) blockPos.getY() + 0.5F), ((float) blockPos.getZ() + 0.5F));
+            if (random.nextFloat() < spawnRate) {
+                this.moveCursor(cursor, LOCAL_X_END / 2, 1, z);
+                if (box.isVecInside(cursor) && !world.getBlockState(below.setPos(cursor).move(Direction.DOWN)).isAir()) {
+                    TNTMinecartEntity tntMinecartEntity = new TNTMinecartEntity(world.getWorld(), ((float) cursor.getX() + 0.5F), ((float) cursor.getY() + 0.5F), ((float) cursor.getZ() + 0.5F));
                     world.addEntity(tntMinecartEntity);
+                    this.entitiesSpawned++;
                 }
             }
         }
@@ -192,21 +202,19 @@ public class SmallTunnel extends MineshaftPiece {
 
     private void generateTorches(ISeedReader world, MutableBoundingBox box, Random random) {
         BlockState torchBlock = Blocks.WALL_TORCH.getDefaultState();
+        BlockPos.Mutable cursor = new BlockPos.Mutable();
+        double spawnRate = ConfigSnapshot.get().torchSpawnRate;
         float r;
         for (int z = 0; z <= LOCAL_Z_END; z++) {
             if (this.supports.contains(z)) continue;
             r = random.nextFloat();
-            if (r < Configuration.spawnRates.torchSpawnRate.get() / 2) {
-                BlockPos pos = new BlockPos(getXWithOffset(1, z), getYWithOffset(2), getZWithOffset(1, z));
-                BlockPos adjPos = new BlockPos(getXWithOffset(0, z), getYWithOffset(2), getZWithOffset(0, z));
-                boolean canPlace = world.getBlockState(pos).isAir() && world.getBlockState(adjPos) != CAVE_AIR;
+            if (r < spawnRate / 2) {
+                boolean canPlace = world.getBlockState(this.moveCursor(cursor, 1, 2, z)).isAir() && world.getBlockState(this.moveCursor(cursor, 0, 2, z)) != CAVE_AIR;
                 if (canPlace) {
                     this.replaceAir(world, box, 1, 2, z, 1, 2, z, torchBlock.with(BlockStateProperties.HORIZONTAL_FACING, Direction.EAST));
                 }
-            } else if (r < Configuration.spawnRates.torchSpawnRate.get()) {
-                BlockPos pos = new BlockPos(getXWithOffset(LOCAL_X_END - 1, z), getYWithOffset(2), getZWithOffset(LOCAL_X_END - 1, z));
-                BlockPos adjPos = new BlockPos(getXWithOffset(LOCAL_X_END , z), getYWithOffset(2), getZWithOffset(LOCAL_X_END, z));
-                boolean canPlace = world.getBlockState(pos).isAir() && world.getBlockState(adjPos) != CAVE_AIR;
+            } else if (r < spawnRate) {
+                boolean canPlace = world.getBlockState(this.moveCursor(cursor, LOCAL_X_END - 1, 2, z)).isAir() && world.getBlockState(this.moveCursor(cursor, LOCAL_X_END, 2, z)) != CAVE_AIR;
                 if (canPlace) {
                     this.replaceAir(world, box, LOCAL_X_END - 1, 2, z, LOCAL_X_END - 1, 2, z, torchBlock.with(BlockStateProperties.HORIZONTAL_FACING, Direction.WEST));
                 }
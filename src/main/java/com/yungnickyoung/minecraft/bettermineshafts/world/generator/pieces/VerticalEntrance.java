@@ -1,9 +1,9 @@
 package com.yungnickyoung.minecraft.bettermineshafts.world.generator.pieces;
 
-import com.yungnickyoung.minecraft.bettermineshafts.BetterMineshafts;
-import com.yungnickyoung.minecraft.bettermineshafts.config.Configuration;
+import com.yungnickyoung.minecraft.bettermineshafts.config.ConfigSnapshot;
 import com.yungnickyoung.minecraft.bettermineshafts.world.generator.BetterMineshaftGenerator;
 import com.yungnickyoung.minecraft.bettermineshafts.world.generator.BetterMineshaftStructurePieceType;
+import com.yungnickyoung.minecraft.bettermineshafts.world.generator.MineshaftMetrics;
 import com.yungnickyoung.minecraft.bettermineshafts.world.generator.MineshaftVariantSettings;
 import com.yungnickyoung.minecraft.yungsapi.world.SurfaceHelper;
 import net.minecraft.block.*;
@@ -15,17 +15,28 @@ import net.minecraft.util.math.ChunkPos;
 import net.minecraft.util.math.ColumnPos;
 import net.minecraft.util.math.MutableBoundingBox;
 import net.minecraft.world.ISeedReader;
+import net.minecraft.world.chunk.ChunkStatus;
+import net.minecraft.world.chunk.IChunk;
 import net.minecraft.world.gen.ChunkGenerator;
+import net.minecraft.world.gen.Heightmap;
 import net.minecraft.world.gen.feature.structure.StructureManager;
 import net.minecraft.world.gen.feature.structure.StructurePiece;
 import net.minecraft.world.gen.feature.template.TemplateManager;
 
 import javax.annotation.ParametersAreNonnullByDefault;
+import java.util.Arrays;
+import java.util.EnumSet;
 import java.util.List;
 import java.util.Random;
 
 public class VerticalEntrance extends MineshaftPiece {
     private BlockPos centerPos;
+
+    /**
+     * The box local coordinates are relative to, i.e. the piece's initial bounding box.
+     * Once a surface tunnel is found, the bounding box shrinks to fit just the shaft and tunnel, but the frame stays the same.
+     */
+    private final MutableBoundingBox frame;
     private int  // height of vertical shaft depends on surface terrain
         yAxisLen  = 0,
         localYEnd = 0;
@@ -34,28 +45,64 @@ public class VerticalEntrance extends MineshaftPiece {
         tunnelFloorAltitude = 0;
     private Direction tunnelDirection = Direction.NORTH;
     private boolean hasTunnel = false;
+    private boolean tunnelRuledOut = false; // Set if the surface was estimated at start time and no tunnel was found
+
+    /**
+     * Surface height of every column checked when looking for a surface tunnel, or UNKNOWN if it hasn't been read yet
+     * or its chunk had no terrain yet. Null once the tunnel has been decided, since it is no longer needed.
+     * The first 25 entries are the 5x5 area of the shaft, followed by the 24 columns checked in each horizontal direction.
+     * Only kept in memory: a piece that finds no tunnel when placed is removed from its start, so the grid is never worth saving.
+     */
+    private int[] surfaceHeights = newSurfaceHeights();
 
     // Vertical shaft static vars
     private static final int
         SHAFT_LOCAL_XZ_START = 22,
         SHAFT_LOCAL_XZ_END = 26;
 
+    // Surface height grid
+    private static final int
+        UNKNOWN = Integer.MIN_VALUE,
+        SHAFT_COLUMNS = 25,
+        TUNNEL_CHECK_LENGTH = 24;
+
+    // Version of the NBT format. Pieces saved before versioning was added use version 0, with one tag per field.
+    private static final int NBT_VERSION = 1;
+
     public VerticalEntrance(TemplateManager structureManager, CompoundNBT compoundTag) {
         super(BetterMineshaftStructurePieceType.VERTICAL_ENTRANCE, compoundTag);
-        int centerPosX = compoundTag.getIntArray("centerPos")[0];
-        int centerPosY = compoundTag.getIntArray("centerPos")[1];
-        int centerPosZ = compoundTag.getIntArray("centerPos")[2];
-        this.centerPos = new BlockPos(centerPosX, centerPosY, centerPosZ);
+        int tunnelDirInt;
+        if (compoundTag.getInt("NbtVersion") >= 1) {
+            // All fields are packed into a single array: center x, y, z, yAxisLen, tunnelLen, floorAltitude, tunnelDir, hasTunnel
+            int[] data = compoundTag.getIntArray("Entrance");
+            this.centerPos = new BlockPos(data[0], data[1], data[2]);
+            this.yAxisLen = data[3];
+            this.tunnelLength = data[4];
+            this.tunnelFloorAltitude = data[5];
+            tunnelDirInt = data[6];
+            this.hasTunnel = data[7] != 0;
+        } else {
+            // Legacy format. The piece will be saved in the current format the next time its chunk is saved.
+            int[] center = compoundTag.getIntArray("centerPos");
+            this.centerPos = new BlockPos(center[0], center[1], center[2]);
+            this.yAxisLen = compoundTag.getInt("yAxisLen");
+            this.tunnelLength = compoundTag.getInt("tunnelLen");
+            this.tunnelFloorAltitude = compoundTag.getInt("floorAltitude");
+            tunnelDirInt = compoundTag.getInt("tunnelDir");
+            this.hasTunnel = compoundTag.getBoolean("hasTunnel");
+        }
 
-        this.yAxisLen = compoundTag.getInt("yAxisLen");
         this.localYEnd = this.yAxisLen - 1;
-        this.tunnelLength = compoundTag.getInt("tunnelLen");
-        this.tunnelFloorAltitude = compoundTag.getInt("floorAltitude");
-
-        int tunnelDirInt = compoundTag.getInt("tunnelDir");
         this.tunnelDirection = tunnelDirInt == -1 ? null : Direction.byHorizontalIndex(tunnelDirInt);
+        this.frame = getInitialMutableBoundingBox(this.centerPos);
 
-        this.hasTunnel = compoundTag.getBoolean("hasTunnel");
+        this.tunnelRuledOut = compoundTag.getBoolean("NoTunnel");
+        if (this.hasTunnel) {
+            this.surfaceHeights = null;
+            fitBoundingBox(); // Pieces saved before bounding boxes were fitted still have the full frame as their box
+        } else if (this.tunnelRuledOut) {
+            this.surfaceHeights = null;
+        }
     }
 
     public VerticalEntrance(int chainLength, Random random, BlockPos.Mutable centerPos, Direction direction, MineshaftVariantSettings settings) {
@@ -63,24 +110,102 @@ public class VerticalEntrance extends MineshaftPiece {
         this.setCoordBaseMode(direction);
         this.centerPos = centerPos; // position passed in is center of shaft piece (unlike all other pieces, where it is a corner)
         this.boundingBox = getInitialMutableBoundingBox(centerPos);
+        this.frame = getInitialMutableBoundingBox(centerPos);
     }
 
     @Override
     @ParametersAreNonnullByDefault
     protected void readAdditional(CompoundNBT tag) {
         super.toNbt(tag);
-        tag.putIntArray("centerPos", new int[]{centerPos.getX(), centerPos.getY(), centerPos.getZ()});
-        tag.putInt("yAxisLen", yAxisLen);
-        tag.putInt("tunnelLen", tunnelLength);
-        tag.putInt("floorAltitude", tunnelFloorAltitude);
-        tag.putInt("tunnelDir", tunnelDirection.getHorizontalIndex());
-        tag.putBoolean("hasTunnel", hasTunnel);
+        tag.putInt("NbtVersion", NBT_VERSION);
+        tag.putIntArray("Entrance", new int[]{
+            centerPos.getX(),
+            centerPos.getY(),
+            centerPos.getZ(),
+            yAxisLen,
+            tunnelLength,
+            tunnelFloorAltitude,
+            tunnelDirection == null ? -1 : tunnelDirection.getHorizontalIndex(),
+            hasTunnel ? 1 : 0
+        });
+        if (tunnelRuledOut) {
+            tag.putBoolean("NoTunnel", true);
+        }
+    }
+
+    private static int[] newSurfaceHeights() {
+        int[] heights = new int[SHAFT_COLUMNS + 4 * TUNNEL_CHECK_LENGTH];
+        Arrays.fill(heights, UNKNOWN);
+        return heights;
     }
 
     private static MutableBoundingBox getInitialMutableBoundingBox(BlockPos centerPos) {
         return new MutableBoundingBox(centerPos.getX() - 24, centerPos.getY(), centerPos.getZ() - 24, centerPos.getX() + 24, 256, centerPos.getZ() + 24);
     }
 
+    /* Local to world coordinates, relative to the frame instead of the bounding box. Otherwise the same as StructurePiece's. */
+
+    @Override
+    protected int getXWithOffset(int x, int z) {
+        Direction direction = this.getCoordBaseMode();
+        if (direction == null) {
+            return x;
+        }
+        switch (direction) {
+            case NORTH:
+            case SOUTH:
+                return frame.minX + x;
+            case WEST:
+                return frame.maxX - z;
+            case EAST:
+                return frame.minX + z;
+            default:
+                return x;
+        }
+    }
+
+    @Override
+    protected int getYWithOffset(int y) {
+        return this.getCoordBaseMode() == null ? y : y + frame.minY;
+    }
+
+    @Override
+    protected int getZWithOffset(int x, int z) {
+        Direction direction = this.getCoordBaseMode();
+        if (direction == null) {
+            return z;
+        }
+        switch (direction) {
+            case NORTH:
+                return frame.maxZ - z;
+            case SOUTH:
+                return frame.minZ + z;
+            case WEST:
+            case EAST:
+                return frame.minZ + x;
+            default:
+                return z;
+        }
+    }
+
+    /**
+     * Shrinks the bounding box to fit the vertical shaft and surface tunnel, so that chunks the piece
+     * no longer overlaps skip it entirely. Must only be called once the tunnel has been found.
+     */
+    private void fitBoundingBox() {
+        MutableBoundingBox box = MutableBoundingBox.createProper(
+            getXWithOffset(SHAFT_LOCAL_XZ_START, SHAFT_LOCAL_XZ_START), getYWithOffset(0), getZWithOffset(SHAFT_LOCAL_XZ_START, SHAFT_LOCAL_XZ_START),
+            getXWithOffset(SHAFT_LOCAL_XZ_END, SHAFT_LOCAL_XZ_END), getYWithOffset(localYEnd), getZWithOffset(SHAFT_LOCAL_XZ_END, SHAFT_LOCAL_XZ_END));
+
+        // Cobwebs may be placed one block past either end of the tunnel
+        int[] tunnel = getTunnelBounds();
+        box.expandTo(MutableBoundingBox.createProper(
+            getXWithOffset(tunnel[0] - 1, tunnel[1] - 1), getYWithOffset(tunnelFloorAltitude), getZWithOffset(tunnel[0] - 1, tunnel[1] - 1),
+            getXWithOffset(tunnel[2] + 1, tunnel[3] + 1), getYWithOffset(tunnelFloorAltitude + 4), getZWithOffset(tunnel[2] + 1, tunnel[3] + 1)));
+
+        this.boundingBox = box;
+    }
+
     @Override
     public void buildComponent(StructurePiece structurePiece, List<StructurePiece> list, Random random) {
         Direction direction = this.getCoordBaseMode();
@@ -106,19 +231,10 @@ public class VerticalEntrance extends MineshaftPiece {
 
     @Override
     @ParametersAreNonnullByDefault
-    public boolean func_230383_a_(ISeedReader world, StructureManager structureManager, ChunkGenerator generator, Random random, MutableBoundingBox box, ChunkPos pos, BlockPos blockPos) {
-        if (BetterMineshafts.DEBUG_LOG) {
-            BetterMineshafts.count.incrementAndGet();
-        }
-
+    protected boolean generate(ISeedReader world, StructureManager structureManager, ChunkGenerator generator, Random random, MutableBoundingBox box, ChunkPos pos, BlockPos blockPos) {
         // Only generate vertical entrance if there is valid surrounding terrain
-        if (!this.hasTunnel) {
-            determineDirection(world);
-
-            if (BetterMineshafts.DEBUG_LOG && this.hasTunnel) {
-                BetterMineshafts.surfaceEntrances.add(this.centerPos.hashCode());
-                BetterMineshafts.LOGGER.info(String.format("(%d, %d) --- %d / %d  (%f%%)", centerPos.getX(), centerPos.getZ(), BetterMineshafts.surfaceEntrances.size(), BetterMineshafts.count.get(), (float) BetterMineshafts.surfaceEntrances.size() * 100 / BetterMineshafts.count.get()));
-            }
+        if (!this.hasTunnel && !this.tunnelRuledOut) {
+            determineDirection((x, z) -> readSurfaceHeight(world, x, z));
         }
 
         if (this.hasTunnel) {
@@ -167,46 +283,13 @@ public class VerticalEntrance extends MineshaftPiece {
      * relies on the surrounding terrain, which can't be determined until generation time.
      */
     private void generateSurfaceTunnel(ISeedReader world, Random random, MutableBoundingBox box) {
-        int tunnelStartX = 0,
-            tunnelStartZ = 0,
-            tunnelEndX = 0,
-            tunnelEndZ = 0;
         Direction facing = this.getCoordBaseMode();
-
-        // We have to account for this piece's rotation.
-        // This is normally handled internally, but must be tweaked manually for surface tunnels
-        // since their orientation is not determined until generation time.
-        float rotationDifference = facing.getHorizontalAngle() - tunnelDirection.getHorizontalAngle();
-        Direction relativeTunnelDir = Direction.fromAngle(Direction.NORTH.getHorizontalAngle() - rotationDifference);
-        if (relativeTunnelDir == Direction.NORTH) {
-            tunnelStartX = 22;
-            tunnelStartZ = 26;
-            tunnelEndX = 26;
-            tunnelEndZ = 26 + tunnelLength;
-        }
-        else if (
-            (relativeTunnelDir == Direction.WEST && !(facing == Direction.SOUTH || facing == Direction.WEST)) ||
-            (relativeTunnelDir == Direction.EAST && (facing == Direction.SOUTH || facing == Direction.WEST))
-        ) {
-            tunnelStartX = 22 - tunnelLength;
-            tunnelStartZ = 22;
-            tunnelEndX = 22;
-            tunnelEndZ = 26;
-        }
-        else if (relativeTunnelDir == Direction.SOUTH) {
-            tunnelStartX = 22;
-            tunnelStartZ = 22 - tunnelLength;
-            tunnelEndX = 26;
-            tunnelEndZ = 22;
-        }
-        else if (
-            relativeTunnelDir == Direction.EAST || relativeTunnelDir == Direction.WEST
-        ) {
-            tunnelStartX = 26;
-            tunnelStartZ = 22;
-            tunnelEndX = 26 + tunnelLength;
-            tunnelEndZ = 26;
-        }
+        Direction relativeTunnelDir = getRelativeTunnelDirection();
+        int[] tunnel = getTunnelBounds();
+        int tunnelStartX = tunnel[0],
+            tunnelStartZ = tunnel[1],
+            tunnelEndX = tunnel[2],
+            tunnelEndZ = tunnel[3];
 
         // ################################################################
         // #                            Tunnel                            #
@@ -276,7 +359,7 @@ public class VerticalEntrance extends MineshaftPiece {
                     this.chanceReplaceNonAir(world, box, random, .25f, tunnelStartX + 1, tunnelFloorAltitude + 3, z, tunnelStartX + 3, tunnelFloorAltitude + 3, z, supportBlock);
 
                     // Cobwebs
-                    float cobwebChance = Configuration.spawnRates.cobwebSpawnRate.get().floatValue();
+                    float cobwebChance = (float) ConfigSnapshot.get().cobwebSpawnRate;
                     this.chanceReplaceAir(world, box, random, cobwebChance, tunnelStartX + 1, tunnelFloorAltitude + 3, z - 1, tunnelStartX + 1, tunnelFloorAltitude + 3, z + 1, Blocks.COBWEB.getDefaultState());
                     this.chanceReplaceAir(world, box, random, cobwebChance, tunnelStartX + 3, tunnelFloorAltitude + 3, z - 1, tunnelStartX + 3, tunnelFloorAltitude + 3, z + 1, Blocks.COBWEB.getDefaultState());
                     z += 3;
@@ -300,7 +383,7 @@ public class VerticalEntrance extends MineshaftPiece {
                     this.chanceReplaceNonAir(world, box, random, .25f, x, tunnelFloorAltitude + 3, tunnelStartZ + 1, x, tunnelFloorAltitude + 3, tunnelStartZ + 3, supportBlock);
 
                     // Cobwebs
-                    float cobwebChance = Configuration.spawnRates.cobwebSpawnRate.get().floatValue();
+                    float cobwebChance = (float) ConfigSnapshot.get().cobwebSpawnRate;
                     this.chanceReplaceAir(world, box, random, cobwebChance, x - 1, tunnelFloorAltitude + 3, tunnelStartZ + 1, x + 1, tunnelFloorAltitude + 3, tunnelStartZ + 1, Blocks.COBWEB.getDefaultState());
                     this.chanceReplaceAir(world, box, random, cobwebChance, x - 1, tunnelFloorAltitude + 3, tunnelStartZ + 3, x + 1, tunnelFloorAltitude + 3, tunnelStartZ + 3, Blocks.COBWEB.getDefaultState());
                     x += 3;
@@ -325,30 +408,97 @@ public class VerticalEntrance extends MineshaftPiece {
         }
     }
 
+    /**
+     * Returns the direction of the surface tunnel relative to this piece's orientation.
+     */
+    private Direction getRelativeTunnelDirection() {
+        // We have to account for this piece's rotation.
+        // This is normally handled internally, but must be tweaked manually for surface tunnels
+        // since their orientation is not determined until generation time.
+        float rotationDifference = this.getCoordBaseMode().getHorizontalAngle() - tunnelDirection.getHorizontalAngle();
+        return Direction.fromAngle(Direction.NORTH.getHorizontalAngle() - rotationDifference);
+    }
+
+    /**
+     * Returns the local horizontal bounds of the surface tunnel, as {startX, startZ, endX, endZ}.
+     */
+    private int[] getTunnelBounds() {
+        Direction facing = this.getCoordBaseMode();
+        Direction relativeTunnelDir = getRelativeTunnelDirection();
+        if (relativeTunnelDir == Direction.NORTH) {
+            return new int[]{22, 26, 26, 26 + tunnelLength};
+        }
+        else if (
+            (relativeTunnelDir == Direction.WEST && !(facing == Direction.SOUTH || facing == Direction.WEST)) ||
+            (relativeTunnelDir == Direction.EAST && (facing == Direction.SOUTH || facing == Direction.WEST))
+        ) {
+            return new int[]{22 - tunnelLength, 22, 22, 26};
+        }
+        else if (relativeTunnelDir == Direction.SOUTH) {
+            return new int[]{22, 22 - tunnelLength, 26, 22};
+        }
+        else if (
+            relativeTunnelDir == Direction.EAST || relativeTunnelDir == Direction.WEST
+        ) {
+            return new int[]{26, 22, 26 + tunnelLength, 26};
+        }
+        return new int[4];
+    }
+
+    /**
+     * Decides the surface tunnel now, from the chunk generator's estimate of the terrain height, instead of during placement.
+     * The estimate ignores carvers and features, so the tunnel may end up slightly off from the final terrain.
+     * If no tunnel is found, the piece is skipped when placed, without looking at the actual terrain.
+     */
+    public void estimateTunnel(ChunkGenerator generator) {
+        determineDirection((x, z) -> generator.getHeight(x, z, Heightmap.Type.WORLD_SURFACE_WG) - 1);
+        if (!this.hasTunnel) {
+            this.tunnelRuledOut = true;
+            this.surfaceHeights = null;
+            // Nothing will be placed, so just keep the piece from reaching into chunks it has no business in
+            this.boundingBox = MutableBoundingBox.createProper(
+                getXWithOffset(SHAFT_LOCAL_XZ_START, SHAFT_LOCAL_XZ_START), getYWithOffset(0), getZWithOffset(SHAFT_LOCAL_XZ_START, SHAFT_LOCAL_XZ_START),
+                getXWithOffset(SHAFT_LOCAL_XZ_END, SHAFT_LOCAL_XZ_END), getYWithOffset(0), getZWithOffset(SHAFT_LOCAL_XZ_END, SHAFT_LOCAL_XZ_END));
+        }
+    }
+
+    /**
+     * Returns the surface height at a column, or UNKNOWN if it isn't available yet.
+     */
+    @FunctionalInterface
+    private interface SurfaceSampler {
+        int getSurfaceHeight(int x, int z);
+    }
+
+    /**
+     * Returns the surface height of the column at the given index, reading it from the sampler if it isn't known yet.
+     */
+    private int getSurfaceHeight(int index, int x, int z, SurfaceSampler sampler) {
+        if (surfaceHeights[index] == UNKNOWN) {
+            surfaceHeights[index] = sampler.getSurfaceHeight(x, z);
+        }
+        return surfaceHeights[index];
+    }
+
     /**
      * Determines the direction to spawn the surface tunnel in.
      * Tries to find a direction in which there is a drop-off, with the goal of creating an opening
      * in the face of a mountain or hill.
+     *
+     * Columns are only read when the search gets to them, and each column is read at most once.
+     * Columns whose height is unknown (e.g. because their chunk has no terrain yet) are skipped.
      */
-    private void determineDirection(ISeedReader world) {
+    private void determineDirection(SurfaceSampler sampler) {
         int minSurfaceHeight = 255;
+        int centerX = centerPos.getX(),
+            centerZ = centerPos.getZ();
 
         // Set height for this, equal to 2 below the min height in the 5x5 vertical shaft piece
         for (int xOffset = -2; xOffset <= 2; xOffset++) {
             for (int zOffset = -2; zOffset <= 2; zOffset++) {
-                try {
-                    int realX = centerPos.getX() + xOffset,
-                        realZ = centerPos.getZ() + zOffset;
-                    int chunkX = realX >> 4,
-                        chunkZ = realZ >> 4;
-                    int surfaceHeight = SurfaceHelper.getSurfaceHeight(world.getChunk(chunkX, chunkZ), new ColumnPos(realX, realZ));
-                    if (surfaceHeight > 1) {
-                        minSurfaceHeight = Math.min(minSurfaceHeight, surfaceHeight);
-                    }
-                } catch (NullPointerException e) {
-                    BetterMineshafts.LOGGER.error("Unexpected YUNG's Better Mineshafts error. Please report this!");
-                    BetterMineshafts.LOGGER.error(e.toString());
-                    BetterMineshafts.LOGGER.error(e.getMessage());
+                int surfaceHeight = getSurfaceHeight((xOffset + 2) * 5 + zOffset + 2, centerX + xOffset, centerZ + zOffset, sampler);
+                if (surfaceHeight > 1) {
+                    minSurfaceHeight = Math.min(minSurfaceHeight, surfaceHeight);
                 }
             }
         }
@@ -363,8 +513,6 @@ public class VerticalEntrance extends MineshaftPiece {
         yAxisLen = ceilingHeight - centerPos.getY() + 1;
         localYEnd = yAxisLen - 1;
 
-        BlockPos.Mutable mutable = centerPos.toMutable();
-
         int radius = 8; // Number of blocks that constitutes one 'radius'
         int maxRadialDist = 3; // Number of radii to check in each direction. E.g. 3 radii * radius of 8 = 24 blocks
 
@@ -373,23 +521,55 @@ public class VerticalEntrance extends MineshaftPiece {
             for (Direction direction : Direction.values()) {
                 if (direction == Direction.UP || direction == Direction.DOWN) continue;
 
-                mutable.setPos(centerPos.offset(direction, radius * radialDist + 2));
-
                 // Check altitude of each individual block along the direction.
                 for (int i = radialDist * radius; i < radialDist * radius + radius; i++) {
-                    int surfaceHeight = SurfaceHelper.getSurfaceHeight(world.getChunk(mutable), new ColumnPos(mutable.getX(), mutable.getZ()));
+                    int x = centerX + direction.getXOffset() * (i + 2),
+                        z = centerZ + direction.getZOffset() * (i + 2);
+                    int surfaceHeight = getSurfaceHeight(tunnelColumnIndex(direction, i), x, z, sampler);
 
                     if (surfaceHeight <= floorHeight && surfaceHeight > 1) {
                         this.hasTunnel = true;
                         this.tunnelDirection = direction;
-                        this.tunnelFloorAltitude = ceilingHeight - 4 - this.boundingBox.minY;
+                        this.tunnelFloorAltitude = ceilingHeight - 4 - this.frame.minY;
                         this.tunnelLength = i;
+                        this.surfaceHeights = null;
+                        fitBoundingBox();
+                        MineshaftMetrics.surfaceEntrances.increment();
                         return;
                     }
-
-                    mutable.move(direction);
                 }
             }
         }
     }
+
+    /**
+     * Index into surfaceHeights of the column i blocks past the edge of the shaft in the given direction,
+     * i.e. i + 2 blocks from the center.
+     */
+    private static int tunnelColumnIndex(Direction direction, int i) {
+        return SHAFT_COLUMNS + direction.getHorizontalIndex() * TUNNEL_CHECK_LENGTH + i;
+    }
+
+    /**
+     * Returns the y-coordinate of the highest non-air block in the column, or UNKNOWN if its chunk has no terrain yet.
+     * Uses the chunk's heightmap if it has one. Otherwise, falls back to scanning the column.
+     *
+     * Note that the WORLD_SURFACE_WG and WORLD_SURFACE heightmaps treat cave_air as air, while the
+     * {@link SurfaceHelper} fallback doesn't, so a column whose top block is cave_air can read higher when scanned.
+     */
+    private static int readSurfaceHeight(ISeedReader world, int x, int z) {
+        IChunk chunk = world.getChunk(x >> 4, z >> 4, ChunkStatus.EMPTY, false);
+        if (chunk == null || !chunk.getStatus().isAtLeast(ChunkStatus.NOISE)) {
+            return UNKNOWN;
+        }
+
+        EnumSet<Heightmap.Type> heightmaps = chunk.getStatus().getHeightMaps();
+        if (heightmaps.contains(Heightmap.Type.WORLD_SURFACE_WG)) {
+            return chunk.getTopBlockY(Heightmap.Type.WORLD_SURFACE_WG, x, z);
+        }
+        if (heightmaps.contains(Heightmap.Type.WORLD_SURFACE)) {
+            return chunk.getTopBlockY(Heightmap.Type.WORLD_SURFACE, x, z);
+        }
+        return SurfaceHelper.getSurfaceHeight(chunk, new ColumnPos(x, z));
+    }
 }
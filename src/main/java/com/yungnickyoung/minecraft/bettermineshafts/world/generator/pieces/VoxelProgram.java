@@ -0,0 +1,332 @@
+package com.yungnickyoung.minecraft.bettermineshafts.world.generator.pieces;
+
+import com.yungnickyoung.minecraft.bettermineshafts.world.generator.CompiledBlockSetSelector;
+import net.minecraft.block.BlockState;
+import net.minecraft.util.Direction;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.MutableBoundingBox;
+import net.minecraft.world.ISeedReader;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Consumer;
+
+/**
+ * A precompiled sequence of fill operations for pieces with fixed geometry.
+ *
+ * Pieces like intersections run the same long list of fill, replace and set calls every time they are placed,
+ * and many blocks get overwritten several times along the way (e.g. randomized, then cleared to air, then floored).
+ * A program records those calls once per piece type, orientation and variant, with all blocks already mirrored and rotated.
+ *
+ * When run, the program works on a buffer of the blocks inside the chunk being generated, reading each block from the world
+ * at most once, and writes each changed block to the world exactly once at the end.
+ * Operations consume random numbers in exactly the same order as the equivalent {@link MineshaftPiece} fill methods,
+ * including for positions outside the chunk, so the result is identical to calling those methods directly.
+ *
+ * Programs are immutable and may be shared between threads.
+ */
+public final class VoxelProgram {
+    private static final int
+        FILL = 0,
+        FILL_SELECTOR = 1,
+        REPLACE_AIR = 2,
+        REPLACE_AIR_SELECTOR = 3,
+        REPLACE_NON_AIR = 4,
+        REPLACE_NON_AIR_SELECTOR = 5,
+        CHANCE_FILL = 6,
+        CHANCE_FILL_SELECTOR = 7,
+        CHANCE_REPLACE_AIR = 8,
+        CHANCE_REPLACE_AIR_SELECTOR = 9,
+        CHANCE_REPLACE_NON_AIR = 10,
+        CHANCE_REPLACE_NON_AIR_SELECTOR = 11,
+        SET = 12,
+        CHANCE_SET = 13;
+
+    private final Op[] ops;
+    private final MutableBoundingBox bounds; // Local-space box containing every op
+
+    private VoxelProgram(Op[] ops, MutableBoundingBox bounds) {
+        this.ops = ops;
+        this.bounds = bounds;
+    }
+
+    /**
+     * Runs this program for the given piece, placing blocks inside the box.
+     */
+    public void run(MineshaftPiece piece, ISeedReader world, MutableBoundingBox box, Random random) {
+        new Buffer(piece, world, box).run(random);
+    }
+
+    /**
+     * Working state of a single program run.
+     * Holds the blocks of the part of the program's bounds that lies inside the box being generated.
+     */
+    private final class Buffer {
+        private final MineshaftPiece piece;
+        private final ISeedReader world;
+        private final BlockPos.Mutable cursor = new BlockPos.Mutable();
+        private final int minX, minY, minZ, maxX, maxY, maxZ, sizeY, sizeZ;
+        private final BlockState[] states; // Null until read from the world or written
+        private final boolean[] dirty;
+        private final boolean[] postprocess;
+
+        private Buffer(MineshaftPiece piece, ISeedReader world, MutableBoundingBox box) {
+            this.piece = piece;
+            this.world = world;
+            MutableBoundingBox localBox = piece.getLocalBox(box);
+            this.minX = Math.max(bounds.minX, localBox.minX);
+            this.minY = Math.max(bounds.minY, localBox.minY);
+            this.minZ = Math.max(bounds.minZ, localBox.minZ);
+            this.maxX = Math.min(bounds.maxX, localBox.maxX);
+            this.maxY = Math.min(bounds.maxY, localBox.maxY);
+            this.maxZ = Math.min(bounds.maxZ, localBox.maxZ);
+            this.sizeY = Math.max(0, maxY - minY + 1);
+            this.sizeZ = Math.max(0, maxZ - minZ + 1);
+            int size = Math.max(0, maxX - minX + 1) * sizeY * sizeZ;
+            this.states = new BlockState[size];
+            this.dirty = new boolean[size];
+            this.postprocess = new boolean[size];
+        }
+
+        private void run(Random random) {
+            for (Op op : ops) {
+                execute(op, random);
+            }
+            flush();
+        }
+
+        private void execute(Op op, Random random) {
+            switch (op.type) {
+                case FILL:
+                case REPLACE_AIR:
+                case REPLACE_AIR_SELECTOR:
+                case REPLACE_NON_AIR:
+                case REPLACE_NON_AIR_SELECTOR:
+                    // These don't use any random numbers for positions outside the buffer, so those can be skipped entirely
+                    for (int x = Math.max(op.minX, minX); x <= Math.min(op.maxX, maxX); x++) {
+                        for (int y = Math.max(op.minY, minY); y <= Math.min(op.maxY, maxY); y++) {
+                            for (int z = Math.max(op.minZ, minZ); z <= Math.min(op.maxZ, maxZ); z++) {
+                                if (op.type == FILL) {
+                                    write(index(x, y, z), op.state);
+                                } else {
+                                    replace(op, x, y, z, random);
+                                }
+                            }
+                        }
+                    }
+                    break;
+                default:
+                    for (int x = op.minX; x <= op.maxX; x++) {
+                        for (int y = op.minY; y <= op.maxY; y++) {
+                            for (int z = op.minZ; z <= op.maxZ; z++) {
+                                executeRandom(op, x, y, z, random);
+                            }
+                        }
+                    }
+            }
+        }
+
+        /**
+         * Executes an op that uses random numbers at a single position, which may be outside the buffer.
+         */
+        private void executeRandom(Op op, int x, int y, int z, Random random) {
+            BlockState state;
+            switch (op.type) {
+                case FILL_SELECTOR:
+                    state = op.select(random);
+                    if (isInside(x, y, z)) {
+                        write(index(x, y, z), state);
+                    }
+                    break;
+                case SET:
+                    if (isInside(x, y, z)) {
+                        write(index(x, y, z), op.state);
+                    }
+                    break;
+                case CHANCE_FILL:
+                case CHANCE_SET:
+                    if (random.nextFloat() < op.chance && isInside(x, y, z)) {
+                        write(index(x, y, z), op.state);
+                    }
+                    break;
+                case CHANCE_FILL_SELECTOR:
+                    if (random.nextFloat() < op.chance) {
+                        state = op.select(random);
+                        if (isInside(x, y, z)) {
+                            write(index(x, y, z), state);
+                        }
+                    }
+                    break;
+                default: // Chance replacements
+                    if (random.nextFloat() < op.chance && isInside(x, y, z)) {
+                        replace(op, x, y, z, random);
+                    }
+            }
+        }
+
+        private void replace(Op op, int x, int y, int z, Random random) {
+            int i = index(x, y, z);
+            if (read(i, x, y, z).isAir() == op.replacesAir) {
+                write(i, op.selector == null ? op.state : op.select(random));
+            }
+        }
+
+        private boolean isInside(int x, int y, int z) {
+            return x >= minX && x <= maxX && y >= minY && y <= maxY && z >= minZ && z <= maxZ;
+        }
+
+        private int index(int x, int y, int z) {
+            return ((x - minX) * sizeY + (y - minY)) * sizeZ + (z - minZ);
+        }
+
+        private BlockState read(int i, int x, int y, int z) {
+            if (states[i] == null) {
+                states[i] = world.getBlockState(piece.moveCursor(cursor, x, y, z));
+            }
+            return states[i];
+        }
+
+        private void write(int i, BlockState state) {
+            states[i] = state;
+            dirty[i] = true;
+            // Vanilla marks a position as soon as any block needing post-processing is placed there, even if it is later replaced
+            postprocess[i] |= MineshaftPiece.needsPostprocessing(state);
+        }
+
+        private void flush() {
+            int i = 0;
+            for (int x = minX; x <= maxX; x++) {
+                for (int y = minY; y <= maxY; y++) {
+                    for (int z = minZ; z <= maxZ; z++, i++) {
+                        if (dirty[i]) {
+                            piece.placeBlock(world, piece.moveCursor(cursor, x, y, z), states[i], postprocess[i]);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private static final class Op {
+        private final int type;
+        private final int minX, minY, minZ, maxX, maxY, maxZ;
+        private final float chance;
+        private final BlockState state;
+        private final CompiledBlockSetSelector selector; // Already oriented
+        private final boolean replacesAir;
+
+        private Op(int type, int minX, int minY, int minZ, int maxX, int maxY, int maxZ, float chance, BlockState state, CompiledBlockSetSelector selector, Direction facing) {
+            this.type = type;
+            this.minX = minX;
+            this.minY = minY;
+            this.minZ = minZ;
+            this.maxX = maxX;
+            this.maxY = maxY;
+            this.maxZ = maxZ;
+            this.chance = chance;
+            this.state = state == null ? null : MineshaftPiece.orient(state, facing);
+            this.selector = selector == null ? null : selector.map(s -> MineshaftPiece.orient(s, facing));
+            this.replacesAir = type == REPLACE_AIR || type == REPLACE_AIR_SELECTOR || type == CHANCE_REPLACE_AIR || type == CHANCE_REPLACE_AIR_SELECTOR;
+        }
+
+        private BlockState select(Random random) {
+            return selector.get(random);
+        }
+    }
+
+    /**
+     * Records the operations of a program.
+     * Each method behaves like the {@link MineshaftPiece} method of the same name, with coordinates in the piece's local space.
+     */
+    public static final class Builder {
+        private final Direction facing;
+        private final List<Op> ops = new ArrayList<>();
+        private MutableBoundingBox bounds = null;
+
+        private Builder(Direction facing) {
+            this.facing = facing;
+        }
+
+        public Builder fill(int minX, int minY, int minZ, int maxX, int maxY, int maxZ, BlockState blockState) {
+            return add(FILL, minX, minY, minZ, maxX, maxY, maxZ, 1, blockState, null);
+        }
+
+        public Builder fill(int minX, int minY, int minZ, int maxX, int maxY, int maxZ, CompiledBlockSetSelector selector) {
+            return add(FILL_SELECTOR, minX, minY, minZ, maxX, maxY, maxZ, 1, null, selector);
+        }
+
+        public Builder replaceAir(int minX, int minY, int minZ, int maxX, int maxY, int maxZ, BlockState blockState) {
+            return add(REPLACE_AIR, minX, minY, minZ, maxX, maxY, maxZ, 1, blockState, null);
+        }
+
+        public Builder replaceAir(int minX, int minY, int minZ, int maxX, int maxY, int maxZ, CompiledBlockSetSelector selector) {
+            return add(REPLACE_AIR_SELECTOR, minX, minY, minZ, maxX, maxY, maxZ, 1, null, selector);
+        }
+
+        public Builder replaceNonAir(int minX, int minY, int minZ, int maxX, int maxY, int maxZ, BlockState blockState) {
+            return add(REPLACE_NON_AIR, minX, minY, minZ, maxX, maxY, maxZ, 1, blockState, null);
+        }
+
+        public Builder replaceNonAir(int minX, int minY, int minZ, int maxX, int maxY, int maxZ, CompiledBlockSetSelector selector) {
+            return add(REPLACE_NON_AIR_SELECTOR, minX, minY, minZ, maxX, maxY, maxZ, 1, null, selector);
+        }
+
+        public Builder chanceFill(float chance, int minX, int minY, int minZ, int maxX, int maxY, int maxZ, BlockState blockState) {
+            return add(CHANCE_FILL, minX, minY, minZ, maxX, maxY, maxZ, chance, blockState, null);
+        }
+
+        public Builder chanceFill(float chance, int minX, int minY, int minZ, int maxX, int maxY, int maxZ, CompiledBlockSetSelector selector) {
+            return add(CHANCE_FILL_SELECTOR, minX, minY, minZ, maxX, maxY, maxZ, chance, null, selector);
+        }
+
+        public Builder chanceReplaceAir(float chance, int minX, int minY, int minZ, int maxX, int maxY, int maxZ, BlockState blockState) {
+            return add(CHANCE_REPLACE_AIR, minX, minY, minZ, maxX, maxY, maxZ, chance, blockState, null);
+        }
+
+        public Builder chanceReplaceAir(float chance, int minX, int minY, int minZ, int maxX, int maxY, int maxZ, CompiledBlockSetSelector selector) {
+            return add(CHANCE_REPLACE_AIR_SELECTOR, minX, minY, minZ, maxX, maxY, maxZ, chance, null, selector);
+        }
+
+        public Builder chanceReplaceNonAir(float chance, int minX, int minY, int minZ, int maxX, int maxY, int maxZ, BlockState blockState) {
+            return add(CHANCE_REPLACE_NON_AIR, minX, minY, minZ, maxX, maxY, maxZ, chance, blockState, null);
+        }
+
+        public Builder chanceReplaceNonAir(float chance, int minX, int minY, int minZ, int maxX, int maxY, int maxZ, CompiledBlockSetSelector selector) {
+            return add(CHANCE_REPLACE_NON_AIR_SELECTOR, minX, minY, minZ, maxX, maxY, maxZ, chance, null, selector);
+        }
+
+        public Builder setBlockState(BlockState blockState, int x, int y, int z) {
+            return add(SET, x, y, z, x, y, z, 1, blockState, null);
+        }
+
+        public Builder chanceAddBlock(float chance, BlockState blockState, int x, int y, int z) {
+            return add(CHANCE_SET, x, y, z, x, y, z, chance, blockState, null);
+        }
+
+        private Builder add(int type, int minX, int minY, int minZ, int maxX, int maxY, int maxZ, float chance, BlockState state, CompiledBlockSetSelector selector) {
+            ops.add(new Op(type, minX, minY, minZ, maxX, maxY, maxZ, chance, state, selector, facing));
+            MutableBoundingBox opBox = new MutableBoundingBox(minX, minY, minZ, maxX, maxY, maxZ);
+            if (bounds == null) {
+                bounds = opBox;
+            } else {
+                bounds.expandTo(opBox);
+            }
+            return this;
+        }
+
+        private VoxelProgram build() {
+            return new VoxelProgram(ops.toArray(new Op[0]), bounds == null ? MutableBoundingBox.getNewBoundingBox() : bounds);
+        }
+    }
+
+    /**
+     * Compiles a program for pieces with the given orientation.
+     * @param definition records the program's operations into the builder
+     */
+    public static VoxelProgram compile(Direction facing, Consumer<Builder> definition) {
+        Builder builder = new Builder(facing);
+        definition.accept(builder);
+        return builder.build();
+    }
+}
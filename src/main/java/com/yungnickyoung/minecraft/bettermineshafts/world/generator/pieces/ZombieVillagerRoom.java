@@ -1,6 +1,7 @@
 package com.yungnickyoung.minecraft.bettermineshafts.world.generator.pieces;
 
 import com.yungnickyoung.minecraft.bettermineshafts.world.generator.BetterMineshaftStructurePieceType;
+import com.yungnickyoung.minecraft.bettermineshafts.world.generator.MineshaftPieceList;
 import com.yungnickyoung.minecraft.bettermineshafts.world.generator.MineshaftVariantSettings;
 import com.yungnickyoung.minecraft.yungsapi.world.BoundingBoxHelper;
 import net.minecraft.block.*;
@@ -55,7 +56,7 @@ public class ZombieVillagerRoom extends MineshaftPiece {
 
         // The following func call returns null if this new blockbox does not intersect with any pieces in the list.
         // If there is an intersection, the following func call returns the piece that intersects.
-        StructurePiece intersectingPiece = StructurePiece.findIntersecting(list, blockBox);
+        StructurePiece intersectingPiece = MineshaftPieceList.findIntersecting(list, blockBox);
 
         // Thus, this function returns null if blackBox intersects with an existing piece. Otherwise, we return blackbox
         return intersectingPiece != null ? null : blockBox;
@@ -67,10 +68,10 @@ public class ZombieVillagerRoom extends MineshaftPiece {
 
     @Override
     @ParametersAreNonnullByDefault
-    public boolean func_230383_a_(ISeedReader world, StructureManager structureManager, ChunkGenerator generator, Random random, MutableBoundingBox box, ChunkPos pos, BlockPos blockPos) {
+    protected boolean generate(ISeedReader world, StructureManager structureManager, ChunkGenerator generator, Random random, MutableBoundingBox box, ChunkPos pos, BlockPos blockPos) {
         // Don't spawn if liquid in this box or if in ocean biome
         if (this.isLiquidInStructureBoundingBox(world, box)) return false;
-        if (this.isInOcean(world, 0, 0) || this.isInOcean(world, LOCAL_X_END, LOCAL_Z_END)) return false;
+        if (this.isInOcean(world, 0, 0, LOCAL_X_END, LOCAL_Z_END)) return false;
 
         // Outermost walls
         this.fill(world, box, 1, 0, 0, 5, 2, 0, Blocks.STONE.getDefaultState());
@@ -147,6 +148,7 @@ public class ZombieVillagerRoom extends MineshaftPiece {
         // Mob spawner
         BlockPos spawnerPos = new BlockPos(this.getXWithOffset(3,3), this.getYWithOffset(0), this.getZWithOffset(3, 3));
         world.setBlockState(spawnerPos, Blocks.SPAWNER.getDefaultState(), 2);
+        this.voxelsPlaced++;
         TileEntity blockEntity = world.getTileEntity(spawnerPos);
         if (blockEntity instanceof MobSpawnerTileEntity) {
             ((MobSpawnerTileEntity)blockEntity).getSpawnerBaseLogic().setEntityType(EntityType.ZOMBIE_VILLAGER);